@@ -0,0 +1,58 @@
+package me.piebridge.bible.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import me.piebridge.bible.utils.FileUtils;
+
+/**
+ * Compressing chapters for bundles, and uncompressing them for display.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FileBenchmark {
+
+    @Param({"asvdemo", "cu89sdemo"})
+    public String version;
+
+    private List<String> chapters;
+
+    private List<byte[]> compressed;
+
+    @Setup
+    public void setup() throws SQLException {
+        chapters = Fixtures.getChapters(version);
+        compressed = new ArrayList<>();
+        for (String chapter : chapters) {
+            compressed.add(FileUtils.compress(chapter));
+        }
+    }
+
+    @Benchmark
+    public void compress(Blackhole blackhole) {
+        for (String chapter : chapters) {
+            blackhole.consume(FileUtils.compress(chapter));
+        }
+    }
+
+    @Benchmark
+    public void uncompress(Blackhole blackhole) {
+        for (byte[] bytes : compressed) {
+            blackhole.consume(FileUtils.uncompressAsString(bytes));
+        }
+    }
+
+}
@@ -0,0 +1,60 @@
+package me.piebridge.bible.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import me.piebridge.bible.utils.FixUtils;
+
+/**
+ * Fixing all chapters of a demo version.
+ * <p>
+ * {@code BibleUtils.fix} only adds {@code Build.VERSION.SDK_INT} to {@link FixUtils}, which
+ * can't be initialized on jvm, so the latter is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FixBenchmark {
+
+    @Param({"asvdemo", "cu89sdemo", "cu89tdemo"})
+    public String version;
+
+    @Param({"false", "true"})
+    public boolean shangti;
+
+    private boolean zhCn;
+
+    private List<String> chapters;
+
+    @Setup
+    public void setup() throws SQLException {
+        chapters = Fixtures.getChapters(version);
+        zhCn = "cu89sdemo".equals(version);
+    }
+
+    @Benchmark
+    public void fix(Blackhole blackhole) {
+        for (String chapter : chapters) {
+            blackhole.consume(FixUtils.fix(chapter, shangti, zhCn, true));
+        }
+    }
+
+    @Benchmark
+    public void fixRegex(Blackhole blackhole) {
+        for (String chapter : chapters) {
+            blackhole.consume(LegacyFix.fix(chapter, shangti, zhCn, true));
+        }
+    }
+
+}
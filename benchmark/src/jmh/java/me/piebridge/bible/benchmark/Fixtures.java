@@ -0,0 +1,87 @@
+package me.piebridge.bible.benchmark;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import me.piebridge.bible.OsisItem;
+
+/**
+ * Contents of the demo databases in {@code bible/src/main/res/raw}.
+ */
+final class Fixtures {
+
+    static final String[] VERSIONS = {"asvdemo", "cu89sdemo", "cu89tdemo"};
+
+    private Fixtures() {
+
+    }
+
+    static File getFile(String version) {
+        String raw = System.getProperty("bible.raw", "bible/src/main/res/raw");
+        File file = new File(raw, version + ".sqlite3");
+        if (!file.isFile()) {
+            throw new IllegalStateException("no fixture " + file + ", set bible.raw");
+        }
+        return file;
+    }
+
+    static List<String> getChapters(String version) throws SQLException {
+        return getStrings(version, "select content from chapters order by id");
+    }
+
+    static List<String> getVerses(String version) throws SQLException {
+        return getStrings(version, "select verse from verses order by id");
+    }
+
+    /**
+     * book names to osis, as {@code VersionsComponent.updateBooks}
+     */
+    static Map<String, String> getBooks(String version) throws SQLException {
+        Map<String, String> books = new HashMap<>();
+        try (
+                Connection connection = open(version);
+                Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery("select osis, human from books order by number")
+        ) {
+            while (rs.next()) {
+                String book = rs.getString(1);
+                String human = rs.getString(2).toLowerCase(Locale.US);
+                books.put(book.toLowerCase(Locale.US), book);
+                books.put(human, book);
+                books.put(OsisItem.fixOsis(human), book);
+            }
+        }
+        return books;
+    }
+
+    private static List<String> getStrings(String version, String sql) throws SQLException {
+        List<String> strings = new ArrayList<>();
+        try (
+                Connection connection = open(version);
+                Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery(sql)
+        ) {
+            while (rs.next()) {
+                String string = rs.getString(1);
+                if (string != null) {
+                    strings.add(string);
+                }
+            }
+        }
+        return strings;
+    }
+
+    private static Connection open(String version) throws SQLException {
+        return DriverManager.getConnection("jdbc:sqlite:" + getFile(version).getAbsolutePath());
+    }
+
+}
@@ -0,0 +1,54 @@
+package me.piebridge.bible.benchmark;
+
+import java.util.regex.Pattern;
+
+/**
+ * The regex chain of {@code BibleUtils.fix} before {@code FixUtils}, as baseline.
+ */
+final class LegacyFix {
+
+    private static final Pattern PN = Pattern.compile("(<span class=\"\\bpn\\b[^<>]*\">[^<>]*</span><span class=\")" +
+            "(\\bpn\\b[^<>]*\")");
+    private static final Pattern NAME = Pattern.compile("(<span class=\"\\bname\\b[^<>]*\">[^<>]*</span><span class=\")" +
+            "(\\bname\\b[^<>]*\")");
+    private static final Pattern PLACE = Pattern.compile("(<span class=\"\\bplace\\b[^<>]*\">[^<>]*</span><(?:u|span) class=\")" +
+            "(\\b(?:place|person)\\b[^<>]*\")");
+    private static final Pattern PERSON = Pattern.compile("(<u class=\"\\bperson\\b[^<>]*\">[^<>]*</u><(?:u|span) class=\")" +
+            "(\\b(?:place|person)\\b[^<>]*\")");
+
+    private LegacyFix() {
+
+    }
+
+    static String fix(String content, boolean shangti, boolean zhCn, boolean dun) {
+        String fixed = content;
+        if (fixed.contains("𣎴") && dun) {
+            fixed = fixed.replaceAll("𣎴", "墩");
+        }
+        fixed = fixDouble(fixed, "pn", PN);
+        fixed = fixDouble(fixed, "name", NAME);
+        fixed = fixDouble(fixed, "place", PLACE);
+        fixed = fixDouble(fixed, "person", PERSON);
+        if (shangti) {
+            fixed = fixed.replaceAll("　神", "上帝")
+                    .replaceAll("　<span class=\"add\">神", "<span class=\"add\">上帝");
+        } else {
+            fixed = fixed.replaceAll("上帝", "　神");
+        }
+        if (zhCn) {
+            return fixed.replaceAll("「", "“").replaceAll("」", "”")
+                    .replaceAll("『", "‘").replaceAll("』", "’");
+        } else {
+            return fixed;
+        }
+    }
+
+    private static String fixDouble(String content, String clazz, Pattern pattern) {
+        int index = content.indexOf("class=\"" + clazz);
+        if (index > 0 && content.indexOf("class=\"" + clazz + "2", index + 1) == -1) {
+            return pattern.matcher(content).replaceAll("$1" + clazz + "-" + clazz + " $2");
+        }
+        return content;
+    }
+
+}
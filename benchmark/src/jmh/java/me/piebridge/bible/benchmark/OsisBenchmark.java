@@ -0,0 +1,55 @@
+package me.piebridge.bible.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import me.piebridge.bible.OsisItem;
+
+/**
+ * Parsing of references, with books of the demo versions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OsisBenchmark {
+
+    private static final String PREVIOUS = "Gen.1";
+
+    @Param({"Gen 1", "Genesis 1:1-3", "gen 1:1, 3, 5-7; 2:4", "Gen 1:26-2:3", "创世记 1:1", "创 1：1－3", "v 3"})
+    public String query;
+
+    private OsisItem.BookResolver resolver;
+
+    @Setup
+    public void setup() throws SQLException {
+        Map<String, String> books = new HashMap<>();
+        for (String version : Fixtures.VERSIONS) {
+            books.putAll(Fixtures.getBooks(version));
+        }
+        resolver = (book, loose) -> books.get(OsisItem.fixOsis(book.toLowerCase(Locale.US)));
+    }
+
+    @Benchmark
+    public List<OsisItem> parseSearch() {
+        return OsisItem.parseSearch(query, resolver, PREVIOUS);
+    }
+
+    @Benchmark
+    public String fixOsis() {
+        return OsisItem.fixOsis(query);
+    }
+
+}
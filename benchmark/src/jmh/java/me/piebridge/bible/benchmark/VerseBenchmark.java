@@ -0,0 +1,40 @@
+package me.piebridge.bible.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import me.piebridge.bible.utils.BibleUtils;
+
+/**
+ * Parsing {@code verses.verse} of the demo version, i.e. 1.031, to chapter and verse.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class VerseBenchmark {
+
+    private List<String> verses;
+
+    @Setup
+    public void setup() throws SQLException {
+        verses = Fixtures.getVerses("asvdemo");
+    }
+
+    @Benchmark
+    public void getChapterVerse(Blackhole blackhole) {
+        for (String verse : verses) {
+            blackhole.consume(BibleUtils.getChapterVerse(verse));
+        }
+    }
+
+}
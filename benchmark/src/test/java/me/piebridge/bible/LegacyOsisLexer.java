@@ -0,0 +1,90 @@
+package me.piebridge.bible;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The regex parser of {@code OsisItem.parseSearch} before {@link OsisLexer}, as golden.
+ * <p>
+ * {@code \d} and {@code \s} are written as in the regex of android, {@code \p{Nd}} and
+ * {@code [\t\n\f\r\p{Z}]}, as the jvm regex only matches ascii for them.
+ */
+final class LegacyOsisLexer {
+
+    private static final String D = "\\p{Nd}";
+
+    private static final String S = "[\\t\\n\\f\\r\\p{Z}]";
+
+    private static final Pattern DASH_BOOK = Pattern.compile("-" + D + "?[A-Za-z]+" + S + "*");
+
+    private static final Pattern REFERENCE = Pattern.compile(S + "*(" + D + "?" + S + "*?[^\\p{Nd}\\t\\n\\f\\r\\p{Z}:-;]*)"
+            + S + "*(" + D + "*):?(" + D + "*)" + S + "*?-?" + S + "*?(" + D + "*):?(" + D + "*);?");
+
+    private LegacyOsisLexer() {
+
+    }
+
+    static String fixOsis(String s) {
+        return s.replaceAll("([A-Za-z]+)\\.", "$1")
+                .replaceAll("(" + D + "?)" + S + "*([^\\p{Nd}]?)", "$1$2");
+    }
+
+    /**
+     * @return group, book, start chapter, start verse, end chapter and end verse of each reference
+     */
+    static List<List<String>> lex(String query) {
+        String s = fixOsis(query);
+        s = s.replace("cf", "");
+        s = s.replace("+", " ");
+        s = s.replace("·", ":");
+        s = s.replace("‧", ":");
+        s = s.replace("：", ":");
+        s = s.replace("﹕", ":");
+        s = s.replace("－", "-");
+        s = s.replace("‐", "-");
+        s = s.replace("−", "-");
+        s = s.replace("‒", "-");
+        s = s.replace("–", "-");
+        s = s.replace("—", "-");
+        s = s.replace("―", "-");
+        s = s.replace("﹣", "-");
+        s = s.replace("。", ":");
+        s = s.replace("︒", ":");
+        s = s.replace("｡", ":");
+        s = s.replace(".", ":");
+        s = s.replace("．", ":");
+        s = s.replace("﹒", ":");
+        s = s.replace("章", ":");
+        s = s.replace("；", ";");
+        s = s.replace("︔", ";");
+        s = s.replace("﹔", ";");
+        s = s.replace("，", ",");
+        s = s.replace("﹐", ",");
+        s = s.replace("(", "");
+        s = s.replace(")", "");
+        s = s.replace("（", "");
+        s = s.replace("）", "");
+        s = s.replace("【", "");
+        s = s.replace("】", "");
+        s = s.replace("〖", "");
+        s = s.replace("〗", "");
+        s = s.replace("[", "");
+        s = s.replace("]", "");
+        s = DASH_BOOK.matcher(s).replaceAll("-");
+
+        List<List<String>> groups = new ArrayList<>();
+        Matcher m = REFERENCE.matcher(s);
+        while (m.find()) {
+            String group = m.group();
+            if (group == null || group.length() == 0) {
+                continue;
+            }
+            groups.add(Arrays.asList(group, m.group(1), m.group(2), m.group(3), m.group(4), m.group(5)));
+        }
+        return groups;
+    }
+
+}
@@ -0,0 +1,106 @@
+package me.piebridge.bible;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Golden test of {@link OsisLexer} and {@link OsisItem#fixOsis(String)}, against the regex parser
+ * they replaced, on the corpus in {@code osis-queries.txt} and on generated queries.
+ */
+public class OsisLexerTest {
+
+    private static final String CORPUS = "/osis-queries.txt";
+
+    private static final long SEED = 0x4f534953L;
+
+    private static final int GENERATED = 200000;
+
+    private static final int MAX_LENGTH = 0x18;
+
+    // letters, digits of other scripts, spaces, and punctuations mapped by the lexer
+    private static final String ALPHABET = "GenJohncfvhCORMATabc.. ::;;,,--++()[]0123456789٣１१"
+            + "\t　  ·‧：﹕－‐−‒–—―﹣"
+            + "。︒｡．﹒章；︔﹔，﹐（）【】"
+            + "〖〗创约节";
+
+    @Test
+    public void corpus() throws IOException {
+        for (String query : readCorpus()) {
+            assertLexed(query);
+        }
+    }
+
+    @Test
+    public void generated() {
+        Random random = new Random(SEED);
+        for (int i = 0; i < GENERATED; ++i) {
+            assertLexed(generate(random));
+        }
+    }
+
+    @Test
+    public void fixOsis() throws IOException {
+        for (String query : readCorpus()) {
+            assertEquals(query, LegacyOsisLexer.fixOsis(query), OsisItem.fixOsis(query));
+        }
+        Random random = new Random(SEED);
+        for (int i = 0; i < GENERATED; ++i) {
+            String query = generate(random);
+            assertEquals(query, LegacyOsisLexer.fixOsis(query), OsisItem.fixOsis(query));
+        }
+    }
+
+    private static void assertLexed(String query) {
+        assertEquals(query, LegacyOsisLexer.lex(query), lex(query));
+    }
+
+    private static List<List<String>> lex(String query) {
+        List<List<String>> groups = new ArrayList<>();
+        OsisLexer lexer = new OsisLexer(query);
+        while (lexer.next()) {
+            groups.add(Arrays.asList(lexer.group, lexer.book, lexer.startChapter, lexer.startVerse,
+                    lexer.endChapter, lexer.endVerse));
+        }
+        return groups;
+    }
+
+    private static String generate(Random random) {
+        int length = random.nextInt(MAX_LENGTH);
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; ++i) {
+            sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return sb.toString();
+    }
+
+    private static List<String> readCorpus() throws IOException {
+        List<String> queries = new ArrayList<>();
+        try (
+                InputStream is = OsisLexerTest.class.getResourceAsStream(CORPUS)
+        ) {
+            assertNotNull(CORPUS, is);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // queries are kept as is, including spaces, except comments
+                if (!line.startsWith("#")) {
+                    queries.add(line);
+                }
+            }
+        }
+        return queries;
+    }
+
+}
@@ -1,13 +1,17 @@
 package me.piebridge.bible;
 
 import android.content.Context;
+import android.content.Intent;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.StrictMode;
+import android.preference.PreferenceManager;
+import android.util.SparseArray;
 
 import androidx.collection.ArraySet;
+import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
 import java.io.File;
 import java.io.IOException;
@@ -21,13 +25,19 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 
+import me.piebridge.bible.activity.AbstractReadingActivity;
 import me.piebridge.bible.component.AnnotationComponent;
+import me.piebridge.bible.component.ChapterComponent;
+import me.piebridge.bible.component.ContentComponent;
 import me.piebridge.bible.component.DownloadComponent;
+import me.piebridge.bible.component.SearchComponent;
 import me.piebridge.bible.component.VersionComponent;
 import me.piebridge.bible.component.VersionsComponent;
 import me.piebridge.bible.utils.BibleUtils;
 import me.piebridge.bible.utils.LocaleUtils;
 import me.piebridge.bible.utils.LogUtils;
+import me.piebridge.bible.utils.NumberUtils;
+import me.piebridge.bible.utils.ParallelUtils;
 import me.piebridge.payment.PaymentApplication;
 
 /**
@@ -49,6 +59,12 @@ public class BibleApplication extends PaymentApplication {
 
     private VersionComponent mVersion;
 
+    private SearchComponent mSearch;
+
+    private ChapterComponent mChapter;
+
+    private ContentComponent mContent;
+
     private Collection<String> mSortedVersions = new LinkedHashSet<>();
 
     public void onCreate() {
@@ -66,8 +82,18 @@ public class BibleApplication extends PaymentApplication {
         super.onCreate();
         mDownload = new DownloadComponent(this);
         mAnnotation = new AnnotationComponent(this);
+        mContent = new ContentComponent();
+        mChapter = new ChapterComponent(this, mContent);
         mVersions = new VersionsComponent(this);
         mVersion = new VersionComponent(this);
+        mSearch = new SearchComponent(this);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // the process may be killed once it's in background
+        mAnnotation.flushHighlights();
     }
 
     public String getDefaultVersion() {
@@ -106,6 +132,10 @@ public class BibleApplication extends PaymentApplication {
         return mDownload.getRemoteVersions();
     }
 
+    public void prefetchAnnotations(String... osisList) {
+        mAnnotation.prefetch(osisList);
+    }
+
     public Bundle getNoteVerses(String osis) {
         return mAnnotation.getNoteVerses(osis);
     }
@@ -130,6 +160,10 @@ public class BibleApplication extends PaymentApplication {
         mAnnotation.saveHighlight(osis, verses);
     }
 
+    public void flushHighlights() {
+        mAnnotation.flushHighlights();
+    }
+
     public Cursor searchHighlight(String book, String sort) {
         return mAnnotation.searchHighlight(book, sort);
     }
@@ -140,17 +174,41 @@ public class BibleApplication extends PaymentApplication {
 
     public boolean unpackZip(File file, String version) {
         try {
-            return mVersions.unpackZip(file, version);
+            if (mVersions.unpackZip(file, version, this::onUnpack)) {
+                // build fixed chapters and pack now, instead of on the first reading
+                prepareChapters(version);
+                return true;
+            }
+            return false;
         } catch (IOException e) {
             LogUtils.d("cannot unpack " + file, e);
             return false;
         }
     }
 
+    private void onUnpack(String version, int progress) {
+        Intent intent = new Intent(VersionsComponent.ACTION_UNPACKING);
+        intent.putExtra(VersionsComponent.EXTRA_VERSION, version);
+        intent.putExtra(VersionsComponent.EXTRA_PROGRESS, progress);
+        LocalBroadcastManager.getInstance(this).sendBroadcast(intent);
+    }
+
     public Collection<String> getVersions() {
         return mVersions.getVersions();
     }
 
+    public boolean isCheckingVersions() {
+        return mVersions.isChecking();
+    }
+
+    public File getFile(String version) {
+        return mVersions.getFile(version);
+    }
+
+    public long getChanged(String version, File file) {
+        return mVersions.getChanged(version, file);
+    }
+
     public Collection<String> getSortedVersions() {
         Set<String> versions = new ArraySet<>(getVersions());
         if (versions.equals(mSortedVersions)) {
@@ -163,8 +221,12 @@ public class BibleApplication extends PaymentApplication {
         return mSortedVersions;
     }
 
-    public String getOsis(String query) {
-        return mVersions.getOsis(query.toLowerCase(Locale.US));
+    public String getOsis(String query, boolean loose) {
+        return mVersions.getOsis(query.toLowerCase(Locale.US), loose);
+    }
+
+    public Set<String> searchBooks(String query) {
+        return mVersions.searchBooks(query.toLowerCase(Locale.US));
     }
 
     public String getVersion() {
@@ -190,6 +252,7 @@ public class BibleApplication extends PaymentApplication {
         if (!initialized) {
             initialized = mVersion.setVersion(mVersions.getDefaultVersion(), false);
             mDownload.loadJson();
+            mSearch.prepare(mVersion.getVersion());
             return false;
         } else {
             return true;
@@ -201,15 +264,91 @@ public class BibleApplication extends PaymentApplication {
         if (updated) {
             mVersions.setDefaultVersion(version);
             mVersions.updateBooks(mVersion.getBooks());
+            mSearch.prepare(version);
         }
         return updated;
     }
 
     public void deleteVersion(String version) {
+        mSearch.deleteIndex(version);
+        mChapter.evictVersion(version);
+        mChapter.deleteFixed(version);
         mVersion.deleteVersion(version);
         mVersions.deleteVersion(version);
     }
 
+    public Cursor searchVerse(String query, String books, long after, int limit, boolean count) {
+        String version = getVersion();
+        if (isNgram(version, query)) {
+            return null;
+        } else {
+            return mSearch.queryVerse(version, query, books, after, limit, count);
+        }
+    }
+
+    public int[] searchVerseIds(String query) {
+        String version = getVersion();
+        if (isNgram(version, query)) {
+            return mSearch.queryNgram(version, query);
+        } else {
+            return null;
+        }
+    }
+
+    private boolean isNgram(String version, String query) {
+        return BibleUtils.isCJK(query) || isZhCn(version);
+    }
+
+    public Bundle getChapter(String osis) {
+        String version = getVersion();
+        return mChapter.getChapter(version, osis, isShangti(), isZhCn(version));
+    }
+
+    public void putChapter(String osis, Bundle bundle) {
+        String version = getVersion();
+        mChapter.putChapter(version, osis, isShangti(), isZhCn(version), bundle);
+    }
+
+    public long putContent(String content) {
+        return mContent.put(content);
+    }
+
+    public String getContent(long id) {
+        return mContent.get(id);
+    }
+
+    public boolean acquireContent(long id) {
+        return mContent.acquire(id);
+    }
+
+    public void releaseContent(long id) {
+        mContent.release(id);
+    }
+
+    public String fixChapter(int id, String content) {
+        String version = getVersion();
+        return mChapter.fix(version, id, content, isShangti(), isZhCn(version));
+    }
+
+    public void prepareChapters(String version) {
+        mChapter.prepare(version, isZhCn(version));
+    }
+
+    /**
+     * content of the version is changed, cached chapters and files built from it are dropped
+     */
+    public void evictVersion(String version) {
+        mVersion.evictVersion(version);
+        mChapter.evictVersion(version);
+        mChapter.deleteFixed(version);
+        mSearch.deleteIndex(version);
+    }
+
+    private boolean isShangti() {
+        return PreferenceManager.getDefaultSharedPreferences(this)
+                .getBoolean(AbstractReadingActivity.SHANGTI, false);
+    }
+
     public SQLiteDatabase acquireDatabase() {
         return mVersion.acquireDatabase();
     }
@@ -218,6 +357,10 @@ public class BibleApplication extends PaymentApplication {
         mVersion.releaseDatabase(database);
     }
 
+    public Cursor queryPackedChapter(String osis) {
+        return mVersion.queryPackedChapter(osis);
+    }
+
     public String removeIntro(String osis) {
         return mVersion.removeIntro(osis);
     }
@@ -288,6 +431,31 @@ public class BibleApplication extends PaymentApplication {
         return mVersion.getAnnotation(osis, link);
     }
 
+    /**
+     * @param versions versions, the first one is the main column
+     * @return chapter of the versions side by side, or null for intro
+     */
+    public String getParallelChapter(String osis, List<String> versions) {
+        String book = BibleUtils.getBook(osis);
+        int chapter = NumberUtils.parseInt(BibleUtils.getChapter(osis));
+        if (chapter <= 0) {
+            return null;
+        }
+        boolean shangti = isShangti();
+        List<SparseArray<String>> verses = mVersion.getParallelVerses(versions, book, chapter);
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < versions.size(); ++i) {
+            String version = versions.get(i);
+            names.add(getName(version));
+            boolean zhCn = isZhCn(version);
+            SparseArray<String> array = verses.get(i);
+            for (int j = 0; j < array.size(); ++j) {
+                array.setValueAt(j, BibleUtils.fix(array.valueAt(j), shangti, zhCn));
+            }
+        }
+        return ParallelUtils.render(osis, names, verses);
+    }
+
     public boolean hasChapter(String version, String osis) {
         return mVersion.hasChapter(version, osis);
     }
@@ -20,8 +20,6 @@ import android.preference.PreferenceManager;
 import android.text.TextUtils;
 
 import java.util.ArrayList;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import me.piebridge.bible.activity.AbstractReadingActivity;
 import me.piebridge.bible.utils.BibleUtils;
@@ -129,9 +127,21 @@ public class OsisItem implements Parcelable {
         return parseSearch(s, application, previous);
     }
 
+    /**
+     * remove '.' after letters, and spaces
+     */
     public static String fixOsis(String s) {
-        return s.replaceAll("([A-Za-z]+)\\.", "$1")
-                .replaceAll("(\\d?)\\s*(\\D?)", "$1$2");
+        int length = s.length();
+        StringBuilder sb = new StringBuilder(length);
+        char previous = 0;
+        for (int i = 0; i < length; ++i) {
+            char c = s.charAt(i);
+            if (!(c == '.' && OsisLexer.isLetter(previous)) && !OsisLexer.isSpace(c)) {
+                sb.append(c);
+            }
+            previous = c;
+        }
+        return sb.toString();
     }
 
     private static boolean isDigitsOnly(String s) {
@@ -139,67 +149,28 @@ public class OsisItem implements Parcelable {
     }
 
     public static ArrayList<OsisItem> parseSearch(String query, BibleApplication application, String previous) {
+        return parseSearch(query, application::getOsis, previous);
+    }
+
+    public static ArrayList<OsisItem> parseSearch(String query, BookResolver resolver, String previous) {
         ArrayList<OsisItem> items = new ArrayList<>();
         if (TextUtils.isEmpty(query)) {
             return items;
         }
 
-        String s = fixOsis(query);
-        s = s.replace("cf", "");
-        s = s.replace("+", " ");
-        s = s.replace("\u00b7", ":");
-        s = s.replace("\u2027", ":");
-        s = s.replace("\uff1a", ":");
-        s = s.replace("\ufe55", ":");
-        s = s.replace("\uff0d", "-");
-        s = s.replace("\u2010", "-");
-        s = s.replace("\u2212", "-");
-        s = s.replace("\u2012", "-");
-        s = s.replace("\u2013", "-");
-        s = s.replace("\u2014", "-");
-        s = s.replace("\u2015", "-");
-        s = s.replace("\ufe63", "-");
-        s = s.replace("\u3002", ":");
-        s = s.replace("\ufe12", ":");
-        s = s.replace("\uff61", ":");
-        s = s.replace("\u002e", ":");
-        s = s.replace("\uff0e", ":");
-        s = s.replace("\ufe52", ":");
-        s = s.replace("\u7ae0", ":");
-        s = s.replace("\uff1b", ";");
-        s = s.replace("\ufe14", ";");
-        s = s.replace("\ufe54", ";");
-        s = s.replace("\uff0c", ",");
-        s = s.replace("\ufe50", ",");
-        s = s.replace("(", "");
-        s = s.replace(")", "");
-        s = s.replace("\uff08", "");
-        s = s.replace("\uff09", "");
-        s = s.replace("\u3010", "");
-        s = s.replace("\u3011", "");
-        s = s.replace("\u3016", "");
-        s = s.replace("\u3017", "");
-        s = s.replace("[", "");
-        s = s.replace("]", "");
-        s = s.replaceAll("-\\d?[A-Za-z]+\\s*", "-");
-
         // John 3; John 3:16; John 3:16-17; John 3-4; John 3-4:5; John 3:16-4:6
-        Pattern p = Pattern.compile("\\s*(\\d?\\s*?[^\\d\\s:-;]*)\\s*(\\d*):?(\\d*)\\s*?-?\\s*?(\\d*):?(\\d*);?");
-        Matcher m = p.matcher(s);
+        OsisLexer lexer = new OsisLexer(query);
         String prevbook = "";
         String prevchap = "";
         String prevosis = "";
         String prevgroup = "";
-        while (m.find()) {
-            String group = m.group();
-            if (group == null || group.length() == 0) {
-                continue;
-            }
-            String book = m.group(1);
-            String startChapter = m.group(2);
-            String startVerse = m.group(3);
-            String endChapter = m.group(4);
-            String endVerse = m.group(5);
+        while (lexer.next()) {
+            String group = lexer.group;
+            String book = lexer.book;
+            String startChapter = lexer.startChapter;
+            String startVerse = lexer.startVerse;
+            String endChapter = lexer.endChapter;
+            String endVerse = lexer.endVerse;
 
             book = book.replace(":", "");
             if (book.startsWith(",")) {
@@ -244,7 +215,8 @@ public class OsisItem implements Parcelable {
                     startChapter = BibleUtils.getChapter(previous);
                 }
             } else {
-                osis = application.getOsis(book);
+                // a name followed by chapter is a reference, otherwise it may be a word to search
+                osis = resolver.getOsis(book, !TextUtils.isEmpty(startChapter));
             }
             if (osis == null) {
                 continue;
@@ -317,6 +289,16 @@ public class OsisItem implements Parcelable {
         return items;
     }
 
+    public interface BookResolver {
+
+        /**
+         * @param loose whether a prefix or a name in one edit resolves too
+         * @return osis of the book name, or null
+         */
+        String getOsis(String book, boolean loose);
+
+    }
+
     public int describeContents() {
         return 0;
     }
@@ -0,0 +1,258 @@
+package me.piebridge.bible;
+
+/**
+ * Lexer for references in search query, i.e. {@code John 3:16-4:6; 5}.
+ * <p>
+ * The query is normalized in one pass: {@link OsisItem#fixOsis(String)}, removal of "cf",
+ * punctuations to {@code : - ; ,}, brackets removed, and book names after '-' removed.
+ * Then each {@link #next()} scans a reference as
+ * {@code \s*(\d?[^\d\s:;]*)\s*(\d*):?(\d*)-?(\d*):?(\d*);?}, greedy, from where the last one ends.
+ * <p>
+ * {@code \d} and {@code \s} are as in the regex of android: {@code \p{Nd}} and {@code [\t\n\f\r\p{Z}]}.
+ */
+class OsisLexer {
+
+    private static final char NONE = 0;
+
+    private static final int DASH_NONE = 0;
+
+    private static final int DASH = 1;
+
+    private static final int DASH_LETTER = 2;
+
+    private static final int DASH_SPACE = 3;
+
+    private final char[] mBuffer;
+
+    private int mLength;
+
+    private int mPosition;
+
+    private int mDash;
+
+    private char mDigit;
+
+    String group;
+
+    String book;
+
+    String startChapter;
+
+    String startVerse;
+
+    String endChapter;
+
+    String endVerse;
+
+    OsisLexer(String query) {
+        mBuffer = new char[query.length()];
+        normalize(query);
+    }
+
+    /**
+     * @return false if there is no more reference
+     */
+    boolean next() {
+        int start = mPosition;
+        int i = skipSpace(start);
+        int bookStart = i;
+        if (i < mLength && isDigit(mBuffer[i])) {
+            ++i;
+        }
+        while (i < mLength && isBook(mBuffer[i])) {
+            ++i;
+        }
+        int bookEnd = i;
+        i = skipSpace(i);
+        int startChapterEnd = skipDigit(i);
+        int startChapterStart = i;
+        i = skip(startChapterEnd, ':');
+        int startVerseEnd = skipDigit(i);
+        int startVerseStart = i;
+        i = skip(startVerseEnd, '-');
+        int endChapterEnd = skipDigit(i);
+        int endChapterStart = i;
+        i = skip(endChapterEnd, ':');
+        int endVerseEnd = skipDigit(i);
+        int endVerseStart = i;
+        i = skip(endVerseEnd, ';');
+        if (i == start) {
+            return false;
+        }
+        mPosition = i;
+        group = substring(start, i);
+        book = substring(bookStart, bookEnd);
+        startChapter = substring(startChapterStart, startChapterEnd);
+        startVerse = substring(startVerseStart, startVerseEnd);
+        endChapter = substring(endChapterStart, endChapterEnd);
+        endVerse = substring(endVerseStart, endVerseEnd);
+        return true;
+    }
+
+    private String substring(int start, int end) {
+        return start == end ? "" : new String(mBuffer, start, end - start);
+    }
+
+    private int skip(int i, char c) {
+        return i < mLength && mBuffer[i] == c ? i + 1 : i;
+    }
+
+    private int skipSpace(int i) {
+        while (i < mLength && isSpace(mBuffer[i])) {
+            ++i;
+        }
+        return i;
+    }
+
+    private int skipDigit(int i) {
+        while (i < mLength && isDigit(mBuffer[i])) {
+            ++i;
+        }
+        return i;
+    }
+
+    private static boolean isBook(char c) {
+        return !isDigit(c) && !isSpace(c) && c != ':' && c != ';';
+    }
+
+    private void normalize(String query) {
+        int length = query.length();
+        char previous = NONE;
+        // 'c' waiting for 'f'
+        boolean c = false;
+        for (int i = 0; i < length; ++i) {
+            char ch = query.charAt(i);
+            boolean dot = ch == '.' && isLetter(previous);
+            previous = ch;
+            if (dot || isSpace(ch)) {
+                // fixOsis
+                continue;
+            }
+            if (c) {
+                c = false;
+                if (ch == 'f') {
+                    continue;
+                }
+                append('c');
+            }
+            if (ch == 'c') {
+                c = true;
+            } else {
+                append(map(ch));
+            }
+        }
+        if (c) {
+            append('c');
+        }
+        if (mDigit != NONE) {
+            mBuffer[mLength++] = mDigit;
+        }
+    }
+
+    /**
+     * remove book name after '-', i.e. {@code -\d?[A-Za-z]+\s*}
+     */
+    private void append(int mapped) {
+        if (mapped < 0) {
+            return;
+        }
+        char ch = (char) mapped;
+        switch (mDash) {
+            case DASH:
+                if (mDigit == NONE && isDigit(ch)) {
+                    mDigit = ch;
+                    return;
+                } else if (isLetter(ch)) {
+                    mDigit = NONE;
+                    mDash = DASH_LETTER;
+                    return;
+                }
+                break;
+            case DASH_LETTER:
+                if (isLetter(ch)) {
+                    return;
+                } else if (ch == ' ') {
+                    mDash = DASH_SPACE;
+                    return;
+                }
+                break;
+            case DASH_SPACE:
+                if (ch == ' ') {
+                    return;
+                }
+                break;
+            default:
+                break;
+        }
+        if (mDigit != NONE) {
+            mBuffer[mLength++] = mDigit;
+            mDigit = NONE;
+        }
+        mDash = ch == '-' ? DASH : DASH_NONE;
+        mBuffer[mLength++] = ch;
+    }
+
+    /**
+     * @return mapped char, or -1 to remove
+     */
+    private static int map(char ch) {
+        switch (ch) {
+            case '+':
+                return ' ';
+            case '\u00b7':
+            case '\u2027':
+            case '\uff1a':
+            case '\ufe55':
+            case '\u3002':
+            case '\ufe12':
+            case '\uff61':
+            case '\u002e':
+            case '\uff0e':
+            case '\ufe52':
+            case '\u7ae0':
+                return ':';
+            case '\uff0d':
+            case '\u2010':
+            case '\u2212':
+            case '\u2012':
+            case '\u2013':
+            case '\u2014':
+            case '\u2015':
+            case '\ufe63':
+                return '-';
+            case '\uff1b':
+            case '\ufe14':
+            case '\ufe54':
+                return ';';
+            case '\uff0c':
+            case '\ufe50':
+                return ',';
+            case '(':
+            case ')':
+            case '\uff08':
+            case '\uff09':
+            case '\u3010':
+            case '\u3011':
+            case '\u3016':
+            case '\u3017':
+            case '[':
+            case ']':
+                return -1;
+            default:
+                return ch;
+        }
+    }
+
+    static boolean isLetter(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+
+    static boolean isDigit(char c) {
+        return Character.isDigit(c);
+    }
+
+    static boolean isSpace(char c) {
+        return c == '\t' || c == '\n' || c == '\f' || c == '\r' || Character.isSpaceChar(c);
+    }
+
+}
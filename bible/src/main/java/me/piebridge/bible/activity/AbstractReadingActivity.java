@@ -30,6 +30,9 @@ import com.google.android.material.appbar.AppBarLayout;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 
 import me.piebridge.bible.BibleApplication;
 import me.piebridge.bible.BuildConfig;
@@ -38,6 +41,7 @@ import me.piebridge.bible.R;
 import me.piebridge.bible.adapter.ReadingAdapter;
 import me.piebridge.bible.bridge.ReadingBridge;
 import me.piebridge.bible.bridge.ReadingHandler;
+import me.piebridge.bible.component.VersionComponent;
 import me.piebridge.bible.fragment.AddNotesFragment;
 import me.piebridge.bible.fragment.FontsizeFragment;
 import me.piebridge.bible.fragment.ProgressFragment;
@@ -48,7 +52,6 @@ import me.piebridge.bible.provider.VersionProvider;
 import me.piebridge.bible.utils.BibleUtils;
 import me.piebridge.bible.utils.ChooserUtils;
 import me.piebridge.bible.utils.ColorUtils;
-import me.piebridge.bible.utils.FileUtils;
 import me.piebridge.bible.utils.LogUtils;
 import me.piebridge.bible.utils.NumberUtils;
 import me.piebridge.bible.utils.ObjectUtils;
@@ -76,6 +79,7 @@ public abstract class AbstractReadingActivity extends DrawerActivity
     private static final int JUMP = 1012;
     private static final int SHOW_PROGRESS = 1013;
     private static final int HIDE_PROGRESS = 1014;
+    private static final int RELOAD_CONTENT = 1015;
 
     public static final String ADAPTER_COUNT = "adapter_count";
 
@@ -112,6 +116,7 @@ public abstract class AbstractReadingActivity extends DrawerActivity
     public static final String RED = "red";
     public static final String JUSTIFY = "justify";
     public static final String FONT_FAMILY = "fontFamily";
+    public static final String PARALLEL = "parallel";
 
     public static final String COLOR_TEXT = "colorText";
     public static final String COLOR_LINK = "colorLink";
@@ -230,6 +235,7 @@ public abstract class AbstractReadingActivity extends DrawerActivity
         handler.removeCallbacksAndMessages(null);
         mainHandler.removeCallbacksAndMessages(null);
         workHandler.removeCallbacksAndMessages(null);
+        ((BibleApplication) getApplication()).flushHighlights();
         super.onStop();
     }
 
@@ -344,6 +350,22 @@ public abstract class AbstractReadingActivity extends DrawerActivity
         }
     }
 
+    /**
+     * content of the position is gone before it's shown, e.g. evicted after released, retrieve it again
+     */
+    public void reloadContent(int position) {
+        workHandler.obtainMessage(RELOAD_CONTENT, position, 0).sendToTarget();
+    }
+
+    protected void reloadContentOnWork(int position) {
+        Bundle bundle = mAdapter.getData(position);
+        String osis = bundle.getString(CURR);
+        if (!TextUtils.isEmpty(osis)) {
+            bundle.putAll(retrieveOsis(position, osis));
+            mainHandler.obtainMessage(RELOAD_CONTENT, position, 0).sendToTarget();
+        }
+    }
+
     protected void updateTaskDescription(String label) {
         if (mAppBar != null) {
             mAppBar.setExpanded(true);
@@ -462,28 +484,29 @@ public abstract class AbstractReadingActivity extends DrawerActivity
             return bundle;
         }
         BibleApplication application = (BibleApplication) getApplication();
-        Uri uri = VersionProvider.CONTENT_URI_CHAPTER.buildUpon().appendEncodedPath(osis).build();
-        try (Cursor cursor = getContentResolver().query(uri, null, null, null, null)) {
-            if (cursor != null && cursor.moveToFirst()) {
-                bundle.putInt(ID, cursor.getInt(cursor.getColumnIndex(BaseColumns._ID)));
-                String curr = getString(cursor, VersionProvider.COLUMN_OSIS);
-                bundle.putString(CURR, curr);
-                bundle.putString(NEXT, getString(cursor, VersionProvider.COLUMN_NEXT));
-                bundle.putString(PREV, getString(cursor, VersionProvider.COLUMN_PREVIOUS));
-                bundle.putString(HUMAN, application.getHuman(BibleUtils.getBook(curr)));
-                String content = getString(cursor, VersionProvider.COLUMN_CONTENT);
-                content = BibleUtils.fix(application, content);
-                bundle.putByteArray(CONTENT, FileUtils.compress(content));
-                bundle.putString(OSIS, curr);
-
-                bundle.putString(HIGHLIGHTED, application.getHighlight(curr));
-                bundle.putBundle(NOTES, application.getNoteVerses(curr));
-            }
-        } catch (SQLiteException e) {
-            LogUtils.d("cannot query " + osis, e);
-        }
         SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
         String version = application.getVersion();
+        List<String> parallel = getParallelVersions(sharedPreferences, application, version);
+        Bundle chapter = application.getChapter(osis);
+        if (chapter == null) {
+            chapter = retrieveChapter(application, osis);
+        }
+        if (chapter != null) {
+            bundle.putAll(chapter);
+            String curr = chapter.getString(CURR);
+            bundle.putString(OSIS, curr);
+            if (!parallel.isEmpty()) {
+                // the cached chapter is kept as is, only this bundle is side by side
+                String content = application.getParallelChapter(curr, parallel);
+                if (content != null) {
+                    bundle.putLong(CONTENT, application.putContent(content));
+                }
+            }
+            // neighbours are likely to be retrieved next
+            application.prefetchAnnotations(curr, chapter.getString(PREV), chapter.getString(NEXT));
+            bundle.putString(HIGHLIGHTED, application.getHighlight(curr));
+            bundle.putBundle(NOTES, application.getNoteVerses(curr));
+        }
         int fontSize = getFontsize(sharedPreferences, version);
         bundle.putString(VERSION, version);
         bundle.putInt(FONT_SIZE, fontSize);
@@ -492,10 +515,35 @@ public abstract class AbstractReadingActivity extends DrawerActivity
         bundle.putBoolean(RED, sharedPreferences.getBoolean(RED, true));
         bundle.putBoolean(JUSTIFY, sharedPreferences.getBoolean(JUSTIFY, false));
         bundle.putString(FONT_FAMILY, sharedPreferences.getString(FONT_FAMILY, DEFAULT_FONT_FAMILY));
+        bundle.putString(PARALLEL, TextUtils.join(",", parallel));
         updateBundle(bundle);
         return bundle;
     }
 
+    private Bundle retrieveChapter(BibleApplication application, String osis) {
+        Uri uri = VersionProvider.CONTENT_URI_CHAPTER.buildUpon().appendEncodedPath(osis).build();
+        try (Cursor cursor = getContentResolver().query(uri, null, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                Bundle chapter = new Bundle();
+                int id = cursor.getInt(cursor.getColumnIndex(BaseColumns._ID));
+                chapter.putInt(ID, id);
+                String curr = getString(cursor, VersionProvider.COLUMN_OSIS);
+                chapter.putString(CURR, curr);
+                chapter.putString(NEXT, getString(cursor, VersionProvider.COLUMN_NEXT));
+                chapter.putString(PREV, getString(cursor, VersionProvider.COLUMN_PREVIOUS));
+                chapter.putString(HUMAN, application.getHuman(BibleUtils.getBook(curr)));
+                String content = getString(cursor, VersionProvider.COLUMN_CONTENT);
+                content = application.fixChapter(id, content);
+                chapter.putLong(CONTENT, application.putContent(content));
+                application.putChapter(osis, chapter);
+                return chapter;
+            }
+        } catch (SQLiteException e) {
+            LogUtils.d("cannot query " + osis, e);
+        }
+        return null;
+    }
+
     public boolean isChanged(Bundle bundle) {
         SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
         BibleApplication application = (BibleApplication) getApplication();
@@ -508,7 +556,28 @@ public abstract class AbstractReadingActivity extends DrawerActivity
                 || !ObjectUtils.equals(bundle.getBoolean(RED), sharedPreferences.getBoolean(RED, true))
                 || !ObjectUtils.equals(bundle.getBoolean(JUSTIFY), sharedPreferences.getBoolean(JUSTIFY, false))
                 || !ObjectUtils.equals(bundle.getString(FONT_FAMILY),
-                sharedPreferences.getString(FONT_FAMILY, DEFAULT_FONT_FAMILY));
+                sharedPreferences.getString(FONT_FAMILY, DEFAULT_FONT_FAMILY))
+                || !ObjectUtils.equals(bundle.getString(PARALLEL),
+                TextUtils.join(",", getParallelVersions(sharedPreferences, application, version)));
+    }
+
+    /**
+     * @return the version and installed parallel versions, or empty if there is no parallel version
+     */
+    private List<String> getParallelVersions(SharedPreferences sharedPreferences, BibleApplication application,
+                                             String version) {
+        Set<String> selected = sharedPreferences.getStringSet(PARALLEL, Collections.emptySet());
+        if (selected.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> versions = new ArrayList<>();
+        versions.add(version);
+        for (String v : application.getSortedVersions()) {
+            if (versions.size() < VersionComponent.MAX_PARALLEL && selected.contains(v) && !v.equals(version)) {
+                versions.add(v);
+            }
+        }
+        return versions.size() > 1 ? versions : Collections.emptyList();
     }
 
     private int getFontsize(SharedPreferences sharedPreferences, String version) {
@@ -1053,6 +1122,9 @@ public abstract class AbstractReadingActivity extends DrawerActivity
                 case REFRESH:
                     activity.refreshOnMain((Integer) msg.obj);
                     break;
+                case RELOAD_CONTENT:
+                    activity.reloadOnMain(msg.arg1);
+                    break;
                 default:
                     break;
             }
@@ -1120,6 +1192,9 @@ public abstract class AbstractReadingActivity extends DrawerActivity
                 case CHECK_DEMO:
                     activity.doCheckDemoVersion();
                     break;
+                case RELOAD_CONTENT:
+                    activity.reloadContentOnWork(msg.arg1);
+                    break;
             }
         }
     }
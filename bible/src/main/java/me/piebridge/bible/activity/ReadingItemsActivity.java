@@ -17,7 +17,6 @@ import me.piebridge.bible.OsisItem;
 import me.piebridge.bible.R;
 import me.piebridge.bible.adapter.HiddenArrayAdapter;
 import me.piebridge.bible.utils.BibleUtils;
-import me.piebridge.bible.utils.FileUtils;
 import me.piebridge.bible.utils.LogUtils;
 import me.piebridge.bible.utils.ObjectUtils;
 
@@ -90,7 +89,7 @@ public class ReadingItemsActivity extends AbstractReadingActivity implements Ada
             bundle.putString(CURR, osis);
             bundle.putString(OSIS, osis);
             bundle.putString(HUMAN, BibleUtils.getBook(osis));
-            bundle.putByteArray(CONTENT, FileUtils.compress(content));
+            bundle.putLong(CONTENT, application.putContent(content));
             bundle.putString(HIGHLIGHTED, "");
             bundle.putBundle(NOTES, new Bundle());
         }
@@ -9,6 +9,7 @@ import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.Message;
+import android.provider.BaseColumns;
 import android.text.Spannable;
 import android.text.TextUtils;
 import android.text.style.BackgroundColorSpan;
@@ -48,6 +49,10 @@ public class ResultsActivity extends ToolbarActivity implements View.OnClickList
 
     private static final int SEARCH = 0;
     private static final int RESULTS = 1;
+    private static final int MORE = 2;
+    private static final int COUNT = 3;
+
+    private static final int PAGE_SIZE = 0x40;
 
     private static final int REQUEST_CODE_VERSION = 1002;
 
@@ -58,10 +63,15 @@ public class ResultsActivity extends ToolbarActivity implements View.OnClickList
 
     private WorkHandler workHandler;
 
+    // counting all the matches may be slow, so it doesn't block pages
+    private WorkHandler countHandler;
+
     private String mBooks;
 
     private String mQuery;
 
+    private int mGeneration;
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -77,7 +87,9 @@ public class ResultsActivity extends ToolbarActivity implements View.OnClickList
         recyclerView.setLayoutManager(linearLayoutManager);
         itemDecoration = new DividerItemDecoration(this, LinearLayoutManager.VERTICAL);
 
-        workHandler = new WorkHandler(this, new MainHandler(this));
+        MainHandler mainHandler = new MainHandler(this);
+        countHandler = new WorkHandler(this, mainHandler, null, "Count");
+        workHandler = new WorkHandler(this, mainHandler, countHandler, "Search");
 
         handleIntent(getIntent());
     }
@@ -98,8 +110,41 @@ public class ResultsActivity extends ToolbarActivity implements View.OnClickList
         refresh();
     }
 
+    @Override
+    protected void onDestroy() {
+        workHandler.getLooper().quit();
+        countHandler.getLooper().quit();
+        super.onDestroy();
+    }
+
     private void refresh() {
-        workHandler.obtainMessage(SEARCH, mQuery).sendToTarget();
+        workHandler.removeCallbacksAndMessages(null);
+        countHandler.removeCallbacksAndMessages(null);
+        workHandler.obtainMessage(SEARCH, ++mGeneration, 0, mQuery).sendToTarget();
+    }
+
+    void loadMore(long after) {
+        workHandler.obtainMessage(MORE, mGeneration, 0, new Object[] {mQuery, after}).sendToTarget();
+    }
+
+    private boolean isCurrent(int generation) {
+        return generation == mGeneration;
+    }
+
+    private void showMore(Cursor cursor) {
+        RecyclerView.Adapter adapter = recyclerView.getAdapter();
+        if (adapter instanceof ResultAdapter) {
+            ((ResultAdapter) adapter).addPage(cursor);
+        } else if (cursor != null) {
+            cursor.close();
+        }
+    }
+
+    private void showCount(int count) {
+        RecyclerView.Adapter adapter = recyclerView.getAdapter();
+        if (adapter instanceof ResultAdapter) {
+            ((ResultAdapter) adapter).setVerseCount(count);
+        }
     }
 
     protected final void updateVersion() {
@@ -298,17 +343,36 @@ public class ResultsActivity extends ToolbarActivity implements View.OnClickList
 
         @Override
         public void handleMessage(Message msg) {
+            ResultsActivity activity = mReference.get();
+            boolean current = activity != null && activity.isCurrent(msg.arg1);
             switch (msg.what) {
                 case RESULTS:
-                    showResults((Cursor[]) msg.obj);
+                    if (current) {
+                        activity.showResults((Cursor[]) msg.obj);
+                    } else {
+                        close((Cursor[]) msg.obj);
+                    }
+                    break;
+                case MORE:
+                    if (current) {
+                        activity.showMore((Cursor) msg.obj);
+                    } else {
+                        close((Cursor) msg.obj);
+                    }
+                    break;
+                case COUNT:
+                    if (current) {
+                        activity.showCount(msg.arg2);
+                    }
                     break;
             }
         }
 
-        private void showResults(Cursor[] cursors) {
-            ResultsActivity activity = mReference.get();
-            if (activity != null) {
-                activity.showResults(cursors);
+        private void close(Cursor... cursors) {
+            for (Cursor cursor : cursors) {
+                if (cursor != null) {
+                    cursor.close();
+                }
             }
         }
 
@@ -317,16 +381,18 @@ public class ResultsActivity extends ToolbarActivity implements View.OnClickList
     static class WorkHandler extends Handler {
 
         private final Handler mainHandler;
+        private final Handler countHandler;
         private final WeakReference<ResultsActivity> mReference;
 
-        WorkHandler(ResultsActivity activity, Handler handler) {
-            super(newLooper());
-            mainHandler = handler;
+        WorkHandler(ResultsActivity activity, Handler handler, Handler countHandler, String name) {
+            super(newLooper(name));
+            this.mainHandler = handler;
+            this.countHandler = countHandler;
             mReference = new WeakReference<>(activity);
         }
 
-        private static Looper newLooper() {
-            HandlerThread thread = new HandlerThread("Search");
+        private static Looper newLooper(String name) {
+            HandlerThread thread = new HandlerThread(name);
             thread.start();
             return thread.getLooper();
         }
@@ -335,30 +401,76 @@ public class ResultsActivity extends ToolbarActivity implements View.OnClickList
         public void handleMessage(Message msg) {
             switch (msg.what) {
                 case SEARCH:
-                    doSearch((String) msg.obj);
+                    doSearch(msg.arg1, (String) msg.obj);
+                    break;
+                case MORE:
+                    Object[] args = (Object[]) msg.obj;
+                    doMore(msg.arg1, (String) args[0], (Long) args[1]);
+                    break;
+                case COUNT:
+                    doCount(msg.arg1, (String) msg.obj);
                     break;
             }
         }
 
-        private void doSearch(String query) {
+        private void doSearch(int generation, String query) {
             ResultsActivity activity = mReference.get();
             if (activity != null) {
                 Uri bookUri = VersionProvider.CONTENT_URI_BOOK.buildUpon()
-                        .appendQueryParameter("books", activity.getBooks())
+                        .appendQueryParameter(VersionProvider.QUERY_BOOKS, activity.getBooks())
                         .appendEncodedPath(query).build();
                 Cursor bookCursor = activity.getContentResolver().query(bookUri, null, null, null, null);
 
-                Uri verseUri = VersionProvider.CONTENT_URI_SEARCH.buildUpon()
-                        .appendQueryParameter("books", activity.getBooks())
-                        .appendEncodedPath(query).build();
-                Cursor verseCursor = activity.getContentResolver().query(verseUri, null, null, null, null);
+                Cursor verseCursor = queryVerses(activity, query, 0, false);
+                int size = verseCursor == null ? 0 : verseCursor.getCount();
 
-                mainHandler.sendMessage(mainHandler.obtainMessage(RESULTS, new Cursor[] {
+                mainHandler.sendMessage(mainHandler.obtainMessage(RESULTS, generation, 0, new Cursor[] {
                         bookCursor, verseCursor
                 }));
+
+                // count all the matches only after the first page is shown
+                if (size >= PAGE_SIZE && countHandler != null) {
+                    countHandler.obtainMessage(COUNT, generation, 0, query).sendToTarget();
+                }
             }
         }
 
+        private void doCount(int generation, String query) {
+            ResultsActivity activity = mReference.get();
+            if (activity != null) {
+                int count = 0;
+                try (Cursor cursor = queryVerses(activity, query, 0, true)) {
+                    if (cursor != null && cursor.moveToFirst()) {
+                        count = cursor.getInt(0);
+                    }
+                }
+                mainHandler.sendMessage(mainHandler.obtainMessage(COUNT, generation, count));
+            }
+        }
+
+        private void doMore(int generation, String query, long after) {
+            ResultsActivity activity = mReference.get();
+            if (activity != null) {
+                Cursor verseCursor = queryVerses(activity, query, after, false);
+                mainHandler.sendMessage(mainHandler.obtainMessage(MORE, generation, 0, verseCursor));
+            }
+        }
+
+        private Cursor queryVerses(ResultsActivity activity, String query, long after, boolean count) {
+            Uri.Builder builder = VersionProvider.CONTENT_URI_SEARCH.buildUpon()
+                    .appendQueryParameter(VersionProvider.QUERY_BOOKS, activity.getBooks());
+            if (count) {
+                builder.appendQueryParameter(VersionProvider.QUERY_COUNT, Boolean.TRUE.toString());
+            } else {
+                builder.appendQueryParameter(VersionProvider.QUERY_LIMIT, Integer.toString(PAGE_SIZE));
+                if (after > 0) {
+                    builder.appendQueryParameter(VersionProvider.QUERY_AFTER, Long.toString(after));
+                }
+            }
+            Uri verseUri = builder.appendEncodedPath(query).build();
+            return activity.getContentResolver().query(verseUri, null, null, null, null);
+        }
+
     }
 
     private static class VerseViewHolder extends RecyclerView.ViewHolder {
@@ -409,9 +521,14 @@ public class ResultsActivity extends ToolbarActivity implements View.OnClickList
         private int bookHuman;
         private int bookChapters;
 
-        private final Cursor verseCursor;
+        private final List<Cursor> versePages = new ArrayList<>();
+        private Cursor verseCursor;
         private int verseStart = -1;
         private int verseEnd = -1;
+        private int verseCount = -1;
+        private boolean verseLoading;
+        private boolean verseMore;
+        private int verseId;
         private int verseBook;
         private int verseHuman;
         private int verseVerse;
@@ -428,7 +545,7 @@ public class ResultsActivity extends ToolbarActivity implements View.OnClickList
             this.mColor = color;
 
             this.bookCursor = cursors[0];
-            this.verseCursor = cursors[1];
+            Cursor verseCursor = cursors[1];
 
             if (bookCursor != null) {
                 bookStart = 0;
@@ -440,9 +557,15 @@ public class ResultsActivity extends ToolbarActivity implements View.OnClickList
             }
 
             if (verseCursor != null) {
+                versePages.add(verseCursor);
                 verseStart = bookEnd + 1;
                 verseEnd = verseStart + verseCursor.getCount();
+                verseMore = verseCursor.getCount() >= PAGE_SIZE;
+                if (!verseMore) {
+                    verseCount = verseCursor.getCount();
+                }
 
+                verseId = verseCursor.getColumnIndexOrThrow(BaseColumns._ID);
                 verseBook = verseCursor.getColumnIndexOrThrow(VersionProvider.COLUMN_BOOK);
                 verseHuman = verseCursor.getColumnIndexOrThrow(VersionProvider.COLUMN_HUMAN);
                 verseVerse = verseCursor.getColumnIndexOrThrow(VersionProvider.COLUMN_VERSE);
@@ -489,15 +612,24 @@ public class ResultsActivity extends ToolbarActivity implements View.OnClickList
                 return;
             }
             if (position > verseStart && verseStart >= 0) {
-                verseCursor.moveToPosition(position - verseStart - 1);
+                int index = position - verseStart - 1;
+                verseCursor = versePages.get(index / PAGE_SIZE);
+                verseCursor.moveToPosition(index % PAGE_SIZE);
                 VerseViewHolder verseViewHolder = (VerseViewHolder) holder;
                 verseViewHolder.humanView.setText(verseCursor.getString(verseHuman));
                 verseViewHolder.cardView.setTag(bindVerse(verseViewHolder.verseView));
                 bindUnformatted(activity, verseViewHolder.unformattedView);
+                if (index + PAGE_SIZE / 2 >= verseEnd - verseStart) {
+                    loadMore(activity);
+                }
             } else if (position == verseStart && verseStart >= 0) {
                 CountViewHolder countViewHolder = (CountViewHolder) holder;
                 countViewHolder.typeView.setText(activity.getString(R.string.reading_verse));
-                countViewHolder.countView.setText(activity.getString(R.string.count, verseEnd - verseStart));
+                if (verseCount >= 0) {
+                    countViewHolder.countView.setText(activity.getString(R.string.count, verseCount));
+                } else {
+                    countViewHolder.countView.setText(activity.getString(R.string.count_more, verseEnd - verseStart));
+                }
             } else if (position > bookStart && bookStart >= 0) {
                 bookCursor.moveToPosition(position - bookStart - 1);
                 BookViewHolder bookViewHolder = (BookViewHolder) holder;
@@ -513,6 +645,40 @@ public class ResultsActivity extends ToolbarActivity implements View.OnClickList
             }
         }
 
+        private void loadMore(ResultsActivity activity) {
+            if (verseMore && !verseLoading) {
+                verseLoading = true;
+                Cursor lastPage = versePages.get(versePages.size() - 1);
+                lastPage.moveToLast();
+                activity.loadMore(lastPage.getLong(verseId));
+            }
+        }
+
+        void addPage(Cursor cursor) {
+            verseLoading = false;
+            if (closed || cursor == null) {
+                verseMore = false;
+                if (cursor != null) {
+                    cursor.close();
+                }
+                return;
+            }
+            int size = cursor.getCount();
+            verseMore = size >= PAGE_SIZE;
+            versePages.add(cursor);
+            int start = verseEnd + 1;
+            verseEnd += size;
+            notifyItemRangeInserted(start, size);
+            notifyItemChanged(verseStart);
+        }
+
+        void setVerseCount(int count) {
+            if (!closed && verseStart >= 0) {
+                verseCount = count;
+                notifyItemChanged(verseStart);
+            }
+        }
+
         private void bindUnformatted(ResultsActivity activity, TextView textView) {
             String content = verseCursor.getString(verseUnformatted);
             BibleApplication application = (BibleApplication) activity.getApplication();
@@ -562,8 +728,8 @@ public class ResultsActivity extends ToolbarActivity implements View.OnClickList
             if (bookCursor != null) {
                 count += bookCursor.getCount() + 1;
             }
-            if (verseCursor != null) {
-                count += verseCursor.getCount() + 1;
+            if (verseStart >= 0) {
+                count += verseEnd - verseStart + 1;
             }
             return count;
         }
@@ -586,9 +752,13 @@ public class ResultsActivity extends ToolbarActivity implements View.OnClickList
             if (bookCursor != null && !bookCursor.isClosed()) {
                 bookCursor.close();
             }
-            if (verseCursor != null && !verseCursor.isClosed()) {
-                verseCursor.close();
+            for (Cursor cursor : versePages) {
+                if (!cursor.isClosed()) {
+                    cursor.close();
+                }
             }
+            versePages.clear();
+            verseCursor = null;
             closed = true;
         }
 
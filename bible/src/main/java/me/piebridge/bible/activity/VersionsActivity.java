@@ -62,6 +62,7 @@ import java.util.Locale;
 import me.piebridge.bible.BibleApplication;
 import me.piebridge.bible.R;
 import me.piebridge.bible.component.DownloadComponent;
+import me.piebridge.bible.component.VersionsComponent;
 import me.piebridge.bible.fragment.CopyrightFragment;
 import me.piebridge.bible.fragment.DeleteVersionConfirmFragment;
 import me.piebridge.bible.utils.BibleUtils;
@@ -102,6 +103,7 @@ public class VersionsActivity extends ToolbarPaymentActivity
     private static final int CHECK_TRANSLATION = 5;
     private static final int UPDATE_ACTIONS = 6;
     private static final int DOWNLOAD_ITEM = 7;
+    private static final int CHECK_VERSION = 8;
 
     private BroadcastReceiver receiver;
 
@@ -373,6 +375,8 @@ public class VersionsActivity extends ToolbarPaymentActivity
         super.onStart();
         IntentFilter intentFilter = new IntentFilter();
         intentFilter.addAction(DownloadManager.ACTION_DOWNLOAD_COMPLETE);
+        intentFilter.addAction(VersionsComponent.ACTION_CHECKED);
+        intentFilter.addAction(VersionsComponent.ACTION_UNPACKING);
         LocalBroadcastManager.getInstance(this).registerReceiver(receiver, intentFilter);
     }
 
@@ -414,6 +418,10 @@ public class VersionsActivity extends ToolbarPaymentActivity
         return versionsAdaper.checkActions();
     }
 
+    boolean checkAction(String version) {
+        return versionsAdaper.checkAction(version);
+    }
+
     void updateActions() {
         mainHandler.obtainMessage(UPDATE_ACTIONS).sendToTarget();
     }
@@ -449,6 +457,24 @@ public class VersionsActivity extends ToolbarPaymentActivity
 
     void onReceive(Intent intent) {
         LogUtils.d("local intent: " + intent + ", extras: " + intent.getExtras());
+        String action = intent.getAction();
+        if (VersionsComponent.ACTION_UNPACKING.equals(action)) {
+            int progress = intent.getIntExtra(VersionsComponent.EXTRA_PROGRESS, 0);
+            versionsAdaper.setProgress(intent.getStringExtra(VersionsComponent.EXTRA_VERSION), progress);
+            if (progress < 0x64) {
+                return;
+            }
+        } else if (VersionsComponent.ACTION_CHECKED.equals(action)) {
+            String version = intent.getStringExtra(VersionsComponent.EXTRA_VERSION);
+            if (version != null) {
+                // only the row of the version, from the catalog
+                workHandler.obtainMessage(CHECK_VERSION, version).sendToTarget();
+                return;
+            } else if (((BibleApplication) getApplication()).isCheckingVersions()) {
+                // actions would check versions again, wait for the one once all are checked
+                return;
+            }
+        }
         String filename = intent.getStringExtra(Intent.EXTRA_TEXT);
         if (filename != null) {
             File file = new File(getExternalCacheDir(), filename);
@@ -609,6 +635,11 @@ public class VersionsActivity extends ToolbarPaymentActivity
                     }
                     removeMessages(CHECK_ACTIONS);
                     break;
+                case CHECK_VERSION:
+                    if (activity.checkAction((String) msg.obj)) {
+                        activity.updateActions();
+                    }
+                    break;
                 case DOWNLOAD_ITEM:
                     BibleApplication application = (BibleApplication) activity.getApplication();
                     application.download((String) msg.obj, msg.arg1 != 0);
@@ -677,6 +708,43 @@ public class VersionsActivity extends ToolbarPaymentActivity
             return changed;
         }
 
+        /**
+         * @param progress progress of unpacking, it's done once it's 100
+         */
+        public void setProgress(String version, int progress) {
+            for (int i = 0; i < mItems.size(); ++i) {
+                VersionItem item = mItems.get(i);
+                if (item.isVersion() && item.code.equalsIgnoreCase(version)) {
+                    int current = progress < 0x64 ? progress : -1;
+                    if (item.progress != current) {
+                        item.progress = current;
+                        notifyItemChanged(i);
+                    }
+                }
+            }
+        }
+
+        /**
+         * as {@link #checkActions()}, but only for the version
+         */
+        public boolean checkAction(String version) {
+            VersionsActivity activity = mReference.get();
+            boolean changed = false;
+            for (VersionItem item : mItems) {
+                item.changed = false;
+                if (item.isVersion() && item.code.equalsIgnoreCase(version)) {
+                    int action = getAction(activity, item);
+                    if (action != item.action) {
+                        LogUtils.d("item: " + item.code + ", old: " + item.action + ", new: " + action);
+                        item.action = action;
+                        changed = true;
+                        item.changed = true;
+                    }
+                }
+            }
+            return changed;
+        }
+
         public void updateActions() {
             DiffUtil.DiffResult result = DiffUtil.calculateDiff(new DiffCallback(mItems, mItems));
             result.dispatchUpdatesTo(this);
@@ -868,8 +936,13 @@ public class VersionsActivity extends ToolbarPaymentActivity
         private void bindVersionViewHolder(VersionViewHolder holder, int position) {
             VersionItem versionItem = mItems.get(position);
             holder.codeView.setText(versionItem.code);
-            holder.nameView.setText(versionItem.name);
             VersionsActivity activity = mReference.get();
+            if (activity != null && versionItem.progress >= 0) {
+                holder.nameView.setText(activity.getString(R.string.translation_unpacking,
+                        versionItem.name, versionItem.progress));
+            } else {
+                holder.nameView.setText(versionItem.name);
+            }
             if (activity != null) {
                 holder.actionView.setContentDescription(activity.getString(versionItem.action));
             } else {
@@ -985,6 +1058,9 @@ public class VersionsActivity extends ToolbarPaymentActivity
 
         boolean changed;
 
+        // progress of unpacking, or -1
+        int progress = -1;
+
         @Override
         public int hashCode() {
             return (code + "-" + lang + "-" + name).hashCode();
@@ -9,9 +9,16 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
 import android.provider.BaseColumns;
 import android.text.TextUtils;
 
+import androidx.collection.LruCache;
+import androidx.collection.SimpleArrayMap;
+
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -20,16 +27,20 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
+import me.piebridge.bible.utils.BibleUtils;
 import me.piebridge.bible.utils.LogUtils;
 import me.piebridge.bible.utils.NoteBundle;
+import me.piebridge.bible.utils.NumberUtils;
 import me.piebridge.bible.utils.ObjectUtils;
+import me.piebridge.bible.utils.VersesUtils;
 
 /**
  * Created by thom on 2018/10/27.
  */
-public class AnnotationComponent {
+public class AnnotationComponent extends Handler {
 
     public static final String SORT_TIME = "time";
     public static final String SORT_BOOK = "book";
@@ -46,14 +57,71 @@ public class AnnotationComponent {
     public static final String COLUMN_CONTENT = "content";
     public static final String COLUMN_CREATETIME = "createtime";
     public static final String COLUMN_UPDATETIME = "updatetime";
+    private static final String COLUMN_BITS = "bits";
+    private static final String COLUMN_BOOK_NUMBER = "book_number";
+    private static final String COLUMN_CHAPTER = "chapter";
+
+    // columns of the highlight listing
+    private static final String[] COLUMNS_HIGHLIGHT = {COLUMN_ID, COLUMN_OSIS, COLUMN_VERSES, COLUMN_UPDATETIME};
+
+    // fts4 over normalized content of notes, docid is id in annotations
+    private static final String TABLE_NOTES = "notes";
 
     private static final String TYPE_HIGHLIGHT = "highlight";
     private static final String TYPE_NOTE = "note";
 
+    public static final int HEALTH_UNKNOWN = 0;
+    public static final int HEALTH_OK = 1;
+    public static final int HEALTH_CORRUPT = 2;
+
+    private static final int MAX_CHAPTERS = 0x20;
+
+    private final LruCache<String, Annotations> mChapters = new LruCache<>(MAX_CHAPTERS);
+
+    private int mGeneration;
+
+    private static final int WRITE_HIGHLIGHTS = 0;
+
+    private static final long DELAY_HIGHLIGHTS = 300;
+
+    private static final long DELAY_RETRY = 0x1388;
+
+    private static final long MAX_DELAY_RETRY = 0xea60;
+
+    private long mRetryDelay = DELAY_RETRY;
+
+    // highlights not written yet
+    private final SimpleArrayMap<String, String> mHighlights = new SimpleArrayMap<>();
+
     public AnnotationComponent(Context context) {
+        super(newLooper());
         this.mOpenHelper = new AnnotationsDatabaseHelper(wrapContext(context));
     }
 
+    private static Looper newLooper() {
+        HandlerThread thread = new HandlerThread("Annotation");
+        thread.start();
+        return thread.getLooper();
+    }
+
+    @Override
+    public void handleMessage(Message msg) {
+        switch (msg.what) {
+            case WRITE_HIGHLIGHTS:
+                writeHighlights();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * @return health of annotations database, checked once it's opened
+     */
+    public int getHealth() {
+        return ((AnnotationsDatabaseHelper) mOpenHelper).mHealth;
+    }
+
     private Context wrapContext(Context context) {
         return new Wrapper(context);
     }
@@ -62,37 +130,11 @@ public class AnnotationComponent {
         if (TextUtils.isEmpty(osis)) {
             return Bundle.EMPTY;
         }
-        SQLiteDatabase db = mOpenHelper.getReadableDatabase();
-        if (!isDatabaseIntegrityOk(db)) {
+        Annotations annotations = getAnnotations(osis);
+        if (annotations == null || annotations.notes.isEmpty()) {
             return Bundle.EMPTY;
-        }
-
-        try (
-                Cursor cursor = db.query(TABLE_ANNOTATIONS, new String[] {COLUMN_ID, COLUMN_VERSE},
-                        COLUMN_OSIS + " = ? and " + COLUMN_TYPE + " = ?",
-                        new String[] {osis, TYPE_NOTE}, null, null, null)
-        ) {
-            if (cursor != null && cursor.moveToFirst()) {
-                int idIndex = cursor.getColumnIndex(COLUMN_ID);
-                int verseIndex = cursor.getColumnIndex(COLUMN_VERSE);
-                Bundle bundle = new Bundle();
-                do {
-                    long id = cursor.getInt(idIndex);
-                    String verse = cursor.getString(verseIndex);
-                    if (!TextUtils.isEmpty(verse) && TextUtils.isDigitsOnly(verse)) {
-                        bundle.putLong(verse, id);
-                    } else {
-                        LogUtils.w("invalid note, osis: " + osis + ", verse: " + verse);
-                    }
-                } while (cursor.moveToNext());
-                if (bundle.isEmpty()) {
-                    return Bundle.EMPTY;
-                } else {
-                    return bundle;
-                }
-            } else {
-                return Bundle.EMPTY;
-            }
+        } else {
+            return new Bundle(annotations.notes);
         }
     }
 
@@ -132,90 +174,291 @@ public class AnnotationComponent {
         }
 
         long time = System.currentTimeMillis() / 1000;
-        if (id == 0) {
-            ContentValues values = new ContentValues();
-            values.put(COLUMN_TYPE, TYPE_NOTE);
-            values.put(COLUMN_OSIS, osis);
-            values.put(COLUMN_VERSE, verse);
-            values.put(COLUMN_VERSES, verses);
-            values.put(COLUMN_CONTENT, content);
-            values.put(COLUMN_CREATETIME, time);
-            values.put(COLUMN_UPDATETIME, time);
-            db.insert(TABLE_ANNOTATIONS, null, values);
-        } else {
-            ContentValues values = new ContentValues();
-            values.put(COLUMN_VERSES, verses);
-            values.put(COLUMN_CONTENT, content);
-            values.put(COLUMN_UPDATETIME, time);
-            db.update(TABLE_ANNOTATIONS, values, COLUMN_ID + " = ?", new String[] {Long.toString(id)});
+        db.beginTransaction();
+        try {
+            long noteId = id;
+            if (id == 0) {
+                ContentValues values = new ContentValues();
+                values.put(COLUMN_TYPE, TYPE_NOTE);
+                values.put(COLUMN_OSIS, osis);
+                values.put(COLUMN_VERSE, verse);
+                values.put(COLUMN_VERSES, verses);
+                values.put(COLUMN_CONTENT, content);
+                values.put(COLUMN_CREATETIME, time);
+                values.put(COLUMN_UPDATETIME, time);
+                putOrder(db, values, osis);
+                noteId = db.insert(TABLE_ANNOTATIONS, null, values);
+            } else {
+                ContentValues values = new ContentValues();
+                values.put(COLUMN_VERSES, verses);
+                values.put(COLUMN_CONTENT, content);
+                values.put(COLUMN_UPDATETIME, time);
+                db.update(TABLE_ANNOTATIONS, values, COLUMN_ID + " = ?", new String[] {Long.toString(id)});
+            }
+            if (noteId > 0) {
+                indexNote(db, noteId, content);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
+        invalidate(id == 0 ? osis : null);
         return true;
     }
 
+    /**
+     * the "simple" tokenizer only splits on ascii, so index normalized content
+     */
+    private static void indexNote(SQLiteDatabase db, long id, String content) {
+        db.delete(TABLE_NOTES, "docid = ?", new String[] {Long.toString(id)});
+        if (!TextUtils.isEmpty(content)) {
+            ContentValues values = new ContentValues();
+            values.put("docid", id);
+            values.put(COLUMN_CONTENT, SearchComponent.normalize(content));
+            db.insert(TABLE_NOTES, null, values);
+        }
+    }
+
     public boolean deleteNote(long id) {
         SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         if (!isDatabaseIntegrityOk(db)) {
             return false;
         }
-        db.delete(TABLE_ANNOTATIONS, COLUMN_ID + " = ?", new String[] {Long.toString(id)});
+        db.beginTransaction();
+        try {
+            db.delete(TABLE_ANNOTATIONS, COLUMN_ID + " = ?", new String[] {Long.toString(id)});
+            indexNote(db, id, null);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        invalidate(null);
         return true;
     }
 
     public String getHighlight(String osis) {
-        String highlighted = "";
+        return VersesUtils.toVerses(getHighlightBits(osis));
+    }
+
+    /**
+     * @return highlighted verses of the chapter as bits, see {@link VersesUtils}
+     */
+    public byte[] getHighlightBits(String osis) {
+        String pending = getPendingHighlight(osis);
+        if (pending != null) {
+            return VersesUtils.toBits(pending);
+        }
+        Annotations annotations = getAnnotations(osis);
+        if (annotations == null) {
+            return new byte[0];
+        } else {
+            return annotations.bits;
+        }
+    }
+
+    /**
+     * load highlights and notes of chapters, which are not cached yet, in one query
+     */
+    public void prefetch(String... osisList) {
+        List<String> missing = new ArrayList<>();
+        for (String osis : osisList) {
+            if (!TextUtils.isEmpty(osis) && !missing.contains(osis) && mChapters.get(osis) == null) {
+                missing.add(osis);
+            }
+        }
+        if (!missing.isEmpty()) {
+            load(missing);
+        }
+    }
+
+    private Annotations getAnnotations(String osis) {
+        Annotations annotations = mChapters.get(osis);
+        if (annotations == null) {
+            annotations = load(Collections.singletonList(osis)).get(osis);
+        }
+        return annotations;
+    }
+
+    private SimpleArrayMap<String, Annotations> load(List<String> osisList) {
+        SimpleArrayMap<String, Annotations> loaded = new SimpleArrayMap<>();
         SQLiteDatabase db = mOpenHelper.getReadableDatabase();
         if (!isDatabaseIntegrityOk(db)) {
-            return highlighted;
-        }
+            return loaded;
+        }
+        int generation;
+        synchronized (mChapters) {
+            generation = mGeneration;
+        }
+        StringBuilder selection = new StringBuilder();
+        List<String> arguments = new ArrayList<>(osisList);
+        selection.append(COLUMN_OSIS).append(" in (");
+        for (int i = 0; i < osisList.size(); ++i) {
+            selection.append(i == 0 ? "?" : ", ?");
+            loaded.put(osisList.get(i), new Annotations());
+        }
+        selection.append(") and ").append(COLUMN_TYPE).append(" in (?, ?)");
+        arguments.add(TYPE_HIGHLIGHT);
+        arguments.add(TYPE_NOTE);
         try (
-                Cursor cursor = db.query(TABLE_ANNOTATIONS, new String[] {COLUMN_ID, COLUMN_VERSES},
-                        COLUMN_OSIS + " = ? and " + COLUMN_TYPE + " = ?",
-                        new String[] {osis, TYPE_HIGHLIGHT}, null, null, null)
+                Cursor cursor = db.query(TABLE_ANNOTATIONS,
+                        new String[] {COLUMN_ID, COLUMN_OSIS, COLUMN_TYPE, COLUMN_VERSE, COLUMN_BITS},
+                        selection.toString(), arguments.toArray(new String[0]), null, null, null)
         ) {
             while (cursor != null && cursor.moveToNext()) {
-                highlighted = cursor.getString(1);
+                String osis = cursor.getString(1);
+                Annotations annotations = loaded.get(osis);
+                if (annotations == null) {
+                    continue;
+                }
+                if (TYPE_HIGHLIGHT.equals(cursor.getString(2))) {
+                    if (!cursor.isNull(4)) {
+                        annotations.bits = cursor.getBlob(4);
+                    }
+                } else {
+                    String verse = cursor.getString(3);
+                    if (!TextUtils.isEmpty(verse) && TextUtils.isDigitsOnly(verse)) {
+                        annotations.notes.putLong(verse, cursor.getLong(0));
+                    } else {
+                        LogUtils.w("invalid note, osis: " + osis + ", verse: " + verse);
+                    }
+                }
             }
         } catch (SQLiteException e) {
             LogUtils.d("sqlite", e);
+            return loaded;
+        }
+        synchronized (mChapters) {
+            // don't cache if there are changes since the query
+            if (generation == mGeneration) {
+                for (int i = 0; i < loaded.size(); ++i) {
+                    mChapters.put(loaded.keyAt(i), loaded.valueAt(i));
+                }
+            }
         }
-        return highlighted;
+        return loaded;
     }
 
-    public boolean saveHighlight(String osis, String verses) {
-        SQLiteDatabase db = mOpenHelper.getWritableDatabase();
-        if (!isDatabaseIntegrityOk(db)) {
+    /**
+     * @param osis chapter changed, or null for all chapters
+     */
+    private void invalidate(String osis) {
+        synchronized (mChapters) {
+            ++mGeneration;
+            if (osis == null) {
+                mChapters.evictAll();
+            } else {
+                mChapters.remove(osis);
+            }
+        }
+    }
+
+    /**
+     * queue the highlight, rapid changes are written in one transaction, failed ones are kept and retried
+     */
+    public void saveHighlight(String osis, String verses) {
+        synchronized (mHighlights) {
+            mHighlights.put(osis, verses);
+        }
+        if (!hasMessages(WRITE_HIGHLIGHTS)) {
+            sendEmptyMessageDelayed(WRITE_HIGHLIGHTS, DELAY_HIGHLIGHTS);
+        }
+    }
+
+    /**
+     * write queued highlights now, in background, e.g. when the app is stopped
+     */
+    public void flushHighlights() {
+        synchronized (mHighlights) {
+            if (mHighlights.isEmpty()) {
+                return;
+            }
+        }
+        removeMessages(WRITE_HIGHLIGHTS);
+        sendEmptyMessage(WRITE_HIGHLIGHTS);
+    }
+
+    private String getPendingHighlight(String osis) {
+        synchronized (mHighlights) {
+            return mHighlights.get(osis);
+        }
+    }
+
+    private void writeHighlights() {
+        if (saveHighlights()) {
+            mRetryDelay = DELAY_RETRY;
+        } else if (!hasMessages(WRITE_HIGHLIGHTS)) {
+            // keep them queued, and retry later
+            LogUtils.d("retry to save highlights in " + mRetryDelay + "ms");
+            sendEmptyMessageDelayed(WRITE_HIGHLIGHTS, mRetryDelay);
+            mRetryDelay = Math.min(mRetryDelay * 2, MAX_DELAY_RETRY);
+        }
+    }
+
+    /**
+     * @return true if queued highlights are written, or there is none
+     */
+    private synchronized boolean saveHighlights() {
+        SimpleArrayMap<String, String> highlights;
+        synchronized (mHighlights) {
+            if (mHighlights.isEmpty()) {
+                return true;
+            }
+            highlights = new SimpleArrayMap<>(mHighlights);
+        }
+        long time = System.currentTimeMillis() / 1000;
+        try {
+            SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+            if (!isDatabaseIntegrityOk(db)) {
+                return false;
+            }
+            db.beginTransaction();
+            try {
+                for (int i = 0; i < highlights.size(); ++i) {
+                    writeHighlight(db, highlights.keyAt(i), highlights.valueAt(i), time);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (SQLiteException e) {
+            LogUtils.w("cannot save highlights", e);
             return false;
         }
+        synchronized (mHighlights) {
+            for (int i = 0; i < highlights.size(); ++i) {
+                String osis = highlights.keyAt(i);
+                // keep the ones changed again while writing
+                if (ObjectUtils.equals(mHighlights.get(osis), highlights.valueAt(i))) {
+                    mHighlights.remove(osis);
+                }
+                invalidate(osis);
+            }
+        }
+        LogUtils.d("save highlights: " + highlights.size());
+        return true;
+    }
+
+    private void writeHighlight(SQLiteDatabase db, String osis, String verses, long time) {
+        byte[] bits = VersesUtils.toBits(verses);
         ContentValues values = new ContentValues();
-        values.put(COLUMN_OSIS, osis);
-        values.put(COLUMN_TYPE, TYPE_HIGHLIGHT);
-        values.put(COLUMN_VERSES, verses);
-        long time = System.currentTimeMillis() / 1000;
+        values.put(COLUMN_VERSES, VersesUtils.toVerses(bits));
+        values.put(COLUMN_BITS, bits);
         values.put(COLUMN_UPDATETIME, time);
 
-        long id = 0;
-        boolean found = false;
-        try (
-                Cursor cursor = db.query(TABLE_ANNOTATIONS, new String[] {COLUMN_ID},
-                        COLUMN_OSIS + " = ? and " + COLUMN_TYPE + " = ?",
-                        new String[] {osis, TYPE_HIGHLIGHT}, null, null, null)
-        ) {
-            if (cursor != null && cursor.moveToFirst()) {
-                found = true;
-                id = cursor.getLong(cursor.getColumnIndex(COLUMN_ID));
-            }
-        }
-        if (found) {
-            db.update(TABLE_ANNOTATIONS, values, COLUMN_ID + " = ?", new String[] {Long.toString(id)});
-        } else {
+        // one highlight row for each chapter, update it, or insert if there is none
+        int count = db.update(TABLE_ANNOTATIONS, values, COLUMN_OSIS + " = ? and " + COLUMN_TYPE + " = ?",
+                new String[] {osis, TYPE_HIGHLIGHT});
+        if (count == 0) {
+            values.put(COLUMN_OSIS, osis);
+            values.put(COLUMN_TYPE, TYPE_HIGHLIGHT);
             values.put(COLUMN_CREATETIME, time);
+            putOrder(db, values, osis);
             db.insert(TABLE_ANNOTATIONS, null, values);
         }
-        return true;
     }
 
     private boolean isDatabaseIntegrityOk(SQLiteDatabase database) {
-        return database.isDatabaseIntegrityOk();
+        return ((AnnotationsDatabaseHelper) mOpenHelper).checkHealth(database) == HEALTH_OK;
     }
 
     private Cursor searchHighlightBook() {
@@ -223,10 +466,9 @@ public class AnnotationComponent {
         if (!isDatabaseIntegrityOk(db)) {
             return null;
         }
-        Cursor cursor = db.rawQuery("select a.* from annotations a left join books b" +
-                " on (substr(a.osis, 1, instr(a.osis, '.') - 1) = b.osis)" +
-                " where a.type = 'highlight' and a.verses != ''" +
-                " order by b.number asc, cast(substr(a.osis, instr(a.osis, '.') + 1) as int) asc", null);
+        Cursor cursor = db.query(TABLE_ANNOTATIONS, COLUMNS_HIGHLIGHT, "type = ? and verses != ''",
+                new String[] {TYPE_HIGHLIGHT}, null, null,
+                COLUMN_BOOK_NUMBER + " asc, " + COLUMN_CHAPTER + " asc");
         if (cursor == null) {
             return null;
         }
@@ -247,10 +489,12 @@ public class AnnotationComponent {
         sb.append("type = ? and verses != ''");
         arguments.add("highlight");
         if (!TextUtils.isEmpty(book)) {
-            sb.append(" and osis like ?");
-            arguments.add(book + ".%");
+            // same as osis like 'book.%', but with index
+            sb.append(" and osis >= ? and osis < ?");
+            arguments.add(book + ".");
+            arguments.add(book + "/");
         }
-        Cursor cursor = db.query(TABLE_ANNOTATIONS, null,
+        Cursor cursor = db.query(TABLE_ANNOTATIONS, COLUMNS_HIGHLIGHT,
                 sb.toString(), arguments.toArray(new String[0]),
                 null, null, "updatetime desc");
         if (cursor == null) {
@@ -264,6 +508,7 @@ public class AnnotationComponent {
     }
 
     public Cursor searchHighlight(String book, String sort) {
+        saveHighlights();
         if (ObjectUtils.equals(SORT_BOOK, sort)) {
             return searchHighlightBook();
         } else {
@@ -272,48 +517,51 @@ public class AnnotationComponent {
     }
 
     private Cursor searchNotesName(String query) {
-        SQLiteDatabase db = mOpenHelper.getReadableDatabase();
-        if (!isDatabaseIntegrityOk(db)) {
-            return null;
-        }
-        Cursor cursor = db.rawQuery("select a.* from annotations a left join books b" +
-                        " on (substr(a.osis, 1, instr(a.osis, '.') - 1) = b.osis)" +
-                        " where a.type = 'note' and a.verses != ''" +
-                        (TextUtils.isEmpty(query) ? " and a.content != ''" : " and a.content like ?") +
-                        " order by b.number asc, cast(substr(a.osis, instr(a.osis, '.') + 1) as int) asc",
-                (TextUtils.isEmpty(query) ? null : new String[] {"%" + query + "%"}));
-        if (cursor == null) {
-            return null;
-        }
-        if (!cursor.moveToFirst()) {
-            cursor.close();
-            return null;
-        }
-        return cursor;
+        return queryNotes(null, query, COLUMN_BOOK_NUMBER + " asc, " + COLUMN_CHAPTER + " asc");
     }
 
     private Cursor searchNotesTime(String book, String query) {
+        return queryNotes(book, query, "updatetime desc");
+    }
+
+    /**
+     * notes containing the query, as {@code like}; fts narrows notes only for words which can't be
+     * inside a word, see {@link SearchComponent#buildMatch(String)}, so it finds the same notes.
+     * Every write of notes is indexed by {@link #indexNote(SQLiteDatabase, long, String)}.
+     */
+    private Cursor queryNotes(String book, String query, String orderBy) {
         SQLiteDatabase db = mOpenHelper.getReadableDatabase();
         if (!isDatabaseIntegrityOk(db)) {
             return null;
         }
+        String match = TextUtils.isEmpty(query) ? null : SearchComponent.buildMatch(query);
+        return queryNotes(db, book, query, match, orderBy);
+    }
+
+    private static Cursor queryNotes(SQLiteDatabase db, String book, String query, String match, String orderBy) {
         StringBuilder sb = new StringBuilder();
         List<String> arguments = new ArrayList<>();
         sb.append("type = ? and verses != ''");
-        arguments.add("note");
+        arguments.add(TYPE_NOTE);
         if (!TextUtils.isEmpty(book)) {
-            sb.append(" and osis like = ?");
-            arguments.add(book + ".%");
+            sb.append(" and osis >= ? and osis < ?");
+            arguments.add(book + ".");
+            arguments.add(book + "/");
         }
         if (TextUtils.isEmpty(query)) {
             sb.append(" and content != ''");
         } else {
+            if (match != null) {
+                sb.append(" and " + COLUMN_ID + " in (select docid from " + TABLE_NOTES + " where "
+                        + TABLE_NOTES + " match ?)");
+                arguments.add(match);
+            }
             sb.append(" and content like ?");
             arguments.add("%" + query + "%");
         }
         Cursor cursor = db.query(TABLE_ANNOTATIONS, null,
                 sb.toString(), arguments.toArray(new String[0]),
-                null, null, "updatetime desc");
+                null, null, orderBy);
         if (cursor == null) {
             return null;
         }
@@ -324,6 +572,19 @@ public class AnnotationComponent {
         return cursor;
     }
 
+    private static void putOrder(SQLiteDatabase db, ContentValues values, String osis) {
+        String book = BibleUtils.getBook(osis);
+        try (
+                Cursor cursor = db.query(TABLE_BOOKS, new String[] {"number"}, "osis = ?",
+                        new String[] {book}, null, null, null, "1")
+        ) {
+            if (cursor != null && cursor.moveToFirst()) {
+                values.put(COLUMN_BOOK_NUMBER, cursor.getInt(0));
+            }
+        }
+        values.put(COLUMN_CHAPTER, NumberUtils.parseInt(BibleUtils.getChapter(osis)));
+    }
+
     public Cursor searchNotes(String book, String query, String sort) {
         if (ObjectUtils.equals(SORT_BOOK, sort)) {
             return searchNotesName(query);
@@ -332,13 +593,46 @@ public class AnnotationComponent {
         }
     }
 
+    private static class Annotations {
+
+        byte[] bits = new byte[0];
+
+        final Bundle notes = new Bundle();
+
+    }
+
     private static class AnnotationsDatabaseHelper extends SQLiteOpenHelper {
 
-        private static final int DATABASE_VERSION = 3;
+        private static final int DATABASE_VERSION = 8;
         private static final String DATABASE_NAME = "annotations.db";
 
+        volatile int mHealth = HEALTH_UNKNOWN;
+
+        private SQLiteDatabase mChecked;
+
         AnnotationsDatabaseHelper(Context context) {
             super(context, DATABASE_NAME, null, DATABASE_VERSION);
+            // readers don't wait for the writer
+            setWriteAheadLoggingEnabled(true);
+        }
+
+        @Override
+        public void onOpen(SQLiteDatabase db) {
+            checkHealth(db);
+        }
+
+        /**
+         * full integrity check, only once for each opened database
+         */
+        synchronized int checkHealth(SQLiteDatabase db) {
+            if (mChecked != db) {
+                long start = System.currentTimeMillis();
+                mHealth = db.isDatabaseIntegrityOk() ? HEALTH_OK : HEALTH_CORRUPT;
+                mChecked = db;
+                LogUtils.d("check " + db + ", health: " + mHealth
+                        + ", cost: " + (System.currentTimeMillis() - start) + "ms");
+            }
+            return mHealth;
         }
 
         @Override
@@ -353,11 +647,16 @@ public class AnnotationComponent {
                     COLUMN_VERSES + " TEXT," +
                     COLUMN_CONTENT + " TEXT," +
                     COLUMN_CREATETIME + " DATETIME," +
-                    COLUMN_UPDATETIME + " DATETIME" +
+                    COLUMN_UPDATETIME + " DATETIME," +
+                    COLUMN_BITS + " BLOB," +
+                    COLUMN_BOOK_NUMBER + " INTEGER," +
+                    COLUMN_CHAPTER + " INTEGER" +
                     ");");
 
             db.execSQL("CREATE INDEX osis_tye ON " + TABLE_ANNOTATIONS + " (" + COLUMN_OSIS + ", " + COLUMN_TYPE + ");");
             addOsis(db);
+            addNotes(db);
+            addOrderIndex(db);
         }
 
         @Override
@@ -366,9 +665,98 @@ public class AnnotationComponent {
             if (oldVersion < 2) {
                 onCreate(db);
                 addOsis(db);
-            } else if (oldVersion < 0x3) {
+                return;
+            }
+            if (oldVersion < 0x3) {
                 addOsis(db);
             }
+            if (oldVersion < 0x4) {
+                addBits(db);
+            }
+            if (oldVersion < 0x5) {
+                addOrder(db);
+            }
+            if (oldVersion < 0x6) {
+                fillOrder(db);
+                addOrderIndex(db);
+            }
+            if (oldVersion < 0x7) {
+                addNotes(db);
+            }
+            if (oldVersion < 0x8) {
+                addOrderIndex(db);
+            }
+        }
+
+        private void addOrder(SQLiteDatabase db) {
+            LogUtils.d("will add order");
+            db.execSQL("ALTER TABLE " + TABLE_ANNOTATIONS + " ADD COLUMN " + COLUMN_BOOK_NUMBER + " INTEGER");
+            db.execSQL("ALTER TABLE " + TABLE_ANNOTATIONS + " ADD COLUMN " + COLUMN_CHAPTER + " INTEGER");
+        }
+
+        private void fillOrder(SQLiteDatabase db) {
+            LogUtils.d("will fill order");
+            db.execSQL("UPDATE " + TABLE_ANNOTATIONS + " SET " +
+                    COLUMN_BOOK_NUMBER + " = (SELECT b.number FROM " + TABLE_BOOKS + " b" +
+                    " WHERE b.osis = substr(" + TABLE_ANNOTATIONS + "." + COLUMN_OSIS + ", 1," +
+                    " instr(" + TABLE_ANNOTATIONS + "." + COLUMN_OSIS + ", '.') - 1)), " +
+                    COLUMN_CHAPTER + " = cast(substr(" + COLUMN_OSIS + ", instr(" + COLUMN_OSIS + ", '.') + 1) as int)" +
+                    " WHERE " + COLUMN_CHAPTER + " IS NULL");
+        }
+
+        /**
+         * covering index of listing in order of book and chapter, the id is the rowid,
+         * so the listing never reads the table
+         */
+        private void addOrderIndex(SQLiteDatabase db) {
+            db.execSQL("DROP INDEX IF EXISTS type_book_chapter");
+            db.execSQL("DROP INDEX IF EXISTS type_book_chapter_verses");
+            db.execSQL("CREATE INDEX IF NOT EXISTS type_book_chapter_osis ON " + TABLE_ANNOTATIONS + " (" +
+                    COLUMN_TYPE + ", " + COLUMN_BOOK_NUMBER + ", " + COLUMN_CHAPTER + ", " + COLUMN_VERSES + ", " +
+                    COLUMN_OSIS + ", " + COLUMN_UPDATETIME + ")");
+        }
+
+        /**
+         * notes are indexed by {@link AnnotationComponent#indexNote(SQLiteDatabase, long, String)}, as normalized
+         * content can't be written by triggers
+         */
+        private void addNotes(SQLiteDatabase db) {
+            LogUtils.d("will add notes");
+            for (String trigger : new String[] {"notes_bu", "notes_bd", "notes_au", "notes_ai"}) {
+                db.execSQL("DROP TRIGGER IF EXISTS " + trigger);
+            }
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_NOTES);
+            db.execSQL("CREATE VIRTUAL TABLE " + TABLE_NOTES + " USING fts4(" + COLUMN_CONTENT + ")");
+            try (
+                    Cursor cursor = db.query(TABLE_ANNOTATIONS, new String[] {COLUMN_ID, COLUMN_CONTENT},
+                            COLUMN_TYPE + " = ?", new String[] {TYPE_NOTE}, null, null, null)
+            ) {
+                while (cursor != null && cursor.moveToNext()) {
+                    indexNote(db, cursor.getLong(0), cursor.getString(1));
+                }
+            }
+        }
+
+        private void addBits(SQLiteDatabase db) {
+            LogUtils.d("will add bits");
+            db.execSQL("ALTER TABLE " + TABLE_ANNOTATIONS + " ADD COLUMN " + COLUMN_BITS + " BLOB");
+            // only the last highlight of a chapter was used
+            db.execSQL("DELETE FROM " + TABLE_ANNOTATIONS + " WHERE " + COLUMN_TYPE + " = '" + TYPE_HIGHLIGHT + "'" +
+                    " AND " + COLUMN_ID + " NOT IN (SELECT MAX(" + COLUMN_ID + ") FROM " + TABLE_ANNOTATIONS +
+                    " WHERE " + COLUMN_TYPE + " = '" + TYPE_HIGHLIGHT + "' GROUP BY " + COLUMN_OSIS + ")");
+            try (
+                    Cursor cursor = db.query(TABLE_ANNOTATIONS, new String[] {COLUMN_ID, COLUMN_VERSES},
+                            COLUMN_TYPE + " = ?", new String[] {TYPE_HIGHLIGHT}, null, null, null)
+            ) {
+                ContentValues values = new ContentValues();
+                while (cursor != null && cursor.moveToNext()) {
+                    byte[] bits = VersesUtils.toBits(cursor.getString(1));
+                    values.put(COLUMN_VERSES, VersesUtils.toVerses(bits));
+                    values.put(COLUMN_BITS, bits);
+                    db.update(TABLE_ANNOTATIONS, values, COLUMN_ID + " = ?",
+                            new String[] {Long.toString(cursor.getLong(0))});
+                }
+            }
         }
 
         private synchronized void addOsis(SQLiteDatabase db) {
@@ -0,0 +1,237 @@
+package me.piebridge.bible.component;
+
+import androidx.collection.ArraySet;
+import androidx.collection.SimpleArrayMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Trie of book names to osis, every suffix of a name is in it too, for substring search.
+ * <p>
+ * Nodes are in arrays, children as first child and next sibling. Each node has a list of
+ * values: the osis index, and whether the name ends there or it's only a suffix of the name.
+ */
+class BookTrie {
+
+    private static final int ROOT = 0;
+
+    private static final int NONE = -1;
+
+    private static final int MAX_DISTANCE = 1;
+
+    private char[] mChars = new char[0x400];
+
+    private int[] mChild = new int[0x400];
+
+    private int[] mSibling = new int[0x400];
+
+    private int[] mValue = new int[0x400];
+
+    private int mSize;
+
+    // value: osis index << 1 | 1 if it's the name, or 0 if only suffix
+    private int[] mValues = new int[0x400];
+
+    private int[] mNext = new int[0x400];
+
+    private int mValueSize;
+
+    private final List<String> mOsis = new ArrayList<>();
+
+    private final SimpleArrayMap<String, Integer> mOsisIndex = new SimpleArrayMap<>();
+
+    BookTrie() {
+        mSize = 1;
+        mChild[ROOT] = NONE;
+        mSibling[ROOT] = NONE;
+        mValue[ROOT] = NONE;
+    }
+
+    /**
+     * @return osis of the name, or null
+     */
+    synchronized String get(String name) {
+        int node = find(name);
+        if (node == NONE) {
+            return null;
+        }
+        for (int value = mValue[node]; value != NONE; value = mNext[value]) {
+            if ((mValues[value] & 1) != 0) {
+                return mOsis.get(mValues[value] >>> 1);
+            }
+        }
+        return null;
+    }
+
+    synchronized void put(String name, String osis) {
+        if (name.isEmpty()) {
+            return;
+        }
+        Integer index = mOsisIndex.get(osis);
+        if (index == null) {
+            index = mOsis.size();
+            mOsis.add(osis);
+            mOsisIndex.put(osis, index);
+        }
+        for (int start = 0; start < name.length(); ++start) {
+            int node = ROOT;
+            for (int i = start; i < name.length(); ++i) {
+                node = getOrAddChild(node, name.charAt(i));
+            }
+            addValue(node, (index << 1) | (start == 0 ? 1 : 0));
+        }
+    }
+
+    /**
+     * @return osis if all names starting with prefix are the same book, or null
+     */
+    synchronized String getByPrefix(String prefix) {
+        int node = find(prefix);
+        if (node == NONE) {
+            return null;
+        }
+        Set<Integer> indexes = new ArraySet<>();
+        collect(mChild[node], true, indexes);
+        addValues(node, true, indexes);
+        return getSingle(indexes);
+    }
+
+    /**
+     * @return osis if all names within one edit of the name are the same book, or null
+     */
+    synchronized String getByDistance(String name) {
+        int[] row = new int[name.length() + 1];
+        for (int i = 0; i < row.length; ++i) {
+            row[i] = i;
+        }
+        Set<Integer> indexes = new ArraySet<>();
+        for (int child = mChild[ROOT]; child != NONE; child = mSibling[child]) {
+            search(child, name, row, indexes);
+        }
+        return getSingle(indexes);
+    }
+
+    /**
+     * @return osis of books which has the text in its name
+     */
+    synchronized Set<String> getByText(String text) {
+        Set<String> osis = new ArraySet<>();
+        int node = find(text);
+        if (node == NONE) {
+            return osis;
+        }
+        Set<Integer> indexes = new ArraySet<>();
+        collect(mChild[node], false, indexes);
+        addValues(node, false, indexes);
+        for (Integer index : indexes) {
+            osis.add(mOsis.get(index));
+        }
+        return osis;
+    }
+
+    private String getSingle(Set<Integer> indexes) {
+        if (indexes.size() == 1) {
+            return mOsis.get(indexes.iterator().next());
+        } else {
+            return null;
+        }
+    }
+
+    private int find(String s) {
+        int node = ROOT;
+        for (int i = 0; i < s.length() && node != NONE; ++i) {
+            node = getChild(node, s.charAt(i));
+        }
+        return node;
+    }
+
+    private void collect(int node, boolean name, Set<Integer> indexes) {
+        for (; node != NONE; node = mSibling[node]) {
+            addValues(node, name, indexes);
+            collect(mChild[node], name, indexes);
+        }
+    }
+
+    private void addValues(int node, boolean name, Set<Integer> indexes) {
+        for (int value = mValue[node]; value != NONE; value = mNext[value]) {
+            if (!name || (mValues[value] & 1) != 0) {
+                indexes.add(mValues[value] >>> 1);
+            }
+        }
+    }
+
+    /**
+     * levenshtein rows along the trie, stop once the whole row is beyond max distance
+     */
+    private void search(int node, String name, int[] previousRow, Set<Integer> indexes) {
+        int length = name.length();
+        int[] row = new int[length + 1];
+        row[0] = previousRow[0] + 1;
+        int min = row[0];
+        char c = mChars[node];
+        for (int i = 1; i <= length; ++i) {
+            int cost = name.charAt(i - 1) == c ? 0 : 1;
+            row[i] = Math.min(Math.min(row[i - 1] + 1, previousRow[i] + 1), previousRow[i - 1] + cost);
+            min = Math.min(min, row[i]);
+        }
+        if (row[length] <= MAX_DISTANCE) {
+            addValues(node, true, indexes);
+        }
+        if (min <= MAX_DISTANCE) {
+            for (int child = mChild[node]; child != NONE; child = mSibling[child]) {
+                search(child, name, row, indexes);
+            }
+        }
+    }
+
+    private int getChild(int node, char c) {
+        for (int child = mChild[node]; child != NONE; child = mSibling[child]) {
+            if (mChars[child] == c) {
+                return child;
+            }
+        }
+        return NONE;
+    }
+
+    private int getOrAddChild(int node, char c) {
+        int child = getChild(node, c);
+        if (child != NONE) {
+            return child;
+        }
+        if (mSize == mChars.length) {
+            int capacity = mSize * 2;
+            mChars = Arrays.copyOf(mChars, capacity);
+            mChild = Arrays.copyOf(mChild, capacity);
+            mSibling = Arrays.copyOf(mSibling, capacity);
+            mValue = Arrays.copyOf(mValue, capacity);
+        }
+        child = mSize++;
+        mChars[child] = c;
+        mChild[child] = NONE;
+        mSibling[child] = mChild[node];
+        mValue[child] = NONE;
+        mChild[node] = child;
+        return child;
+    }
+
+    private void addValue(int node, int value) {
+        for (int index = mValue[node]; index != NONE; index = mNext[index]) {
+            if (mValues[index] == value) {
+                return;
+            }
+        }
+        if (mValueSize == mValues.length) {
+            int capacity = mValueSize * 2;
+            mValues = Arrays.copyOf(mValues, capacity);
+            mNext = Arrays.copyOf(mNext, capacity);
+        }
+        int index = mValueSize++;
+        mValues[index] = value;
+        mNext[index] = mValue[node];
+        mValue[node] = index;
+    }
+
+}
@@ -0,0 +1,404 @@
+package me.piebridge.bible.component;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.text.TextUtils;
+
+import androidx.collection.ArraySet;
+import androidx.collection.LruCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+
+import me.piebridge.bible.activity.AbstractReadingActivity;
+import me.piebridge.bible.provider.VersionProvider;
+import me.piebridge.bible.utils.BibleUtils;
+import me.piebridge.bible.utils.LogUtils;
+
+/**
+ * Fixed chapters.
+ * <p>
+ * Recently read chapters, fixed, are kept in memory, keyed by version, osis and fix options,
+ * their contents are referenced in {@link ContentComponent}. Fixed contents are also stored in
+ * {@code <version>.fixed} next to the translation database, built in background once the version
+ * is checked, only chapters changed by {@link BibleUtils#fix(String, boolean, boolean)} are stored.
+ * Chapters are packed by {@link ChapterPack} in the same build.
+ */
+public class ChapterComponent extends Handler {
+
+    private static final int BUILD = 0;
+
+    private static final int MAX_SIZE = 0x100000;
+
+    private static final int DATABASE_FLAGS = SQLiteDatabase.OPEN_READONLY | SQLiteDatabase.NO_LOCALIZED_COLLATORS;
+
+    private static final int FIXED_FLAGS = SQLiteDatabase.CREATE_IF_NECESSARY | SQLiteDatabase.NO_LOCALIZED_COLLATORS;
+
+    private static final String FIXED_SUFFIX = ".fixed";
+
+    private static final String TABLE_FIXED = "fixed";
+
+    private static final String TABLE_METADATA = "metadata";
+
+    private static final String METADATA_ZHCN = "zhcn";
+
+    private static final String METADATA_SDK = "sdk";
+
+    private static final int OPTION_SHANGTI = 0x1;
+
+    private final Context mContext;
+
+    private final ContentComponent mContents;
+
+    private final LruCache<String, Bundle> mChapters;
+
+    private final Set<String> mBuilding = new ArraySet<>();
+
+    private SQLiteDatabase mFixed;
+
+    private String mFixedVersion;
+
+    private boolean mFixedZhCn;
+
+    private final Object fixedLock = new Object();
+
+    public ChapterComponent(Context context, ContentComponent contents) {
+        super(newLooper());
+        this.mContext = context;
+        this.mContents = contents;
+        this.mChapters = new LruCache<String, Bundle>(MAX_SIZE) {
+            @Override
+            protected int sizeOf(String key, Bundle value) {
+                return key.length() + getSize(value);
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bundle oldValue, Bundle newValue) {
+                mContents.release(oldValue.getLong(AbstractReadingActivity.CONTENT));
+            }
+        };
+    }
+
+    private static Looper newLooper() {
+        HandlerThread thread = new HandlerThread("Chapter");
+        thread.start();
+        return thread.getLooper();
+    }
+
+    @Override
+    public void handleMessage(Message msg) {
+        switch (msg.what) {
+            case BUILD:
+                buildFixed((String) msg.obj, msg.arg1 != 0);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * @return a copy of the cached chapter, or null
+     */
+    public Bundle getChapter(String version, String osis, boolean shangti, boolean zhCn) {
+        Bundle bundle = mChapters.get(getKey(version, osis, shangti, zhCn));
+        if (bundle == null) {
+            return null;
+        } else {
+            return new Bundle(bundle);
+        }
+    }
+
+    public void putChapter(String version, String osis, boolean shangti, boolean zhCn, Bundle bundle) {
+        if (mContents.acquire(bundle.getLong(AbstractReadingActivity.CONTENT))) {
+            mChapters.put(getKey(version, osis, shangti, zhCn), new Bundle(bundle));
+        }
+    }
+
+    public void evictVersion(String version) {
+        String prefix = version + "/";
+        for (String key : mChapters.snapshot().keySet()) {
+            if (key.startsWith(prefix)) {
+                mChapters.remove(key);
+            }
+        }
+        LogUtils.d("evict chapters of " + version + ", size: " + mChapters.size());
+    }
+
+    private static String getKey(String version, String osis, boolean shangti, boolean zhCn) {
+        return version + "/" + osis + "/" + (shangti ? 1 : 0) + (zhCn ? 1 : 0);
+    }
+
+    private int getSize(Bundle bundle) {
+        int size = 0;
+        for (String key : bundle.keySet()) {
+            Object value = bundle.get(key);
+            if (AbstractReadingActivity.CONTENT.equals(key)) {
+                // referenced by the cache, so it's there
+                String content = mContents.get(bundle.getLong(key));
+                size += content == null ? 0 : content.length() * 2;
+            } else if (value instanceof String) {
+                size += ((String) value).length() * 2;
+            } else {
+                size += 0x10;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * schedule building of fixed chapters for version if it's missing or outdated
+     */
+    public void prepare(String version, boolean zhCn) {
+        if (TextUtils.isEmpty(version)) {
+            return;
+        }
+        File file = VersionsComponent.getFile(mContext, version);
+        if (file == null || (isFixed(version, file, getFixedFile(file, version))
+                && ChapterPack.isPacked(mContext, version, file, ChapterPack.getFile(mContext, version)))) {
+            return;
+        }
+        synchronized (mBuilding) {
+            if (mBuilding.contains(version)) {
+                return;
+            }
+            mBuilding.add(version);
+        }
+        obtainMessage(BUILD, zhCn ? 1 : 0, 0, version).sendToTarget();
+    }
+
+    /**
+     * @param id chapter id
+     * @return fixed content, from stored ones if available
+     */
+    public String fix(String version, int id, String content, boolean shangti, boolean zhCn) {
+        SQLiteDatabase fixed = acquireFixed(version, zhCn);
+        if (fixed != null) {
+            try (
+                    Cursor cursor = fixed.query(TABLE_FIXED, new String[] {"content"}, "id = ? and options = ?",
+                            new String[] {String.valueOf(id), String.valueOf(shangti ? OPTION_SHANGTI : 0)},
+                            null, null, null, "1")
+            ) {
+                if (cursor != null && cursor.moveToFirst()) {
+                    return cursor.getString(0);
+                } else {
+                    // unchanged by fix
+                    return content;
+                }
+            } catch (SQLiteException e) {
+                LogUtils.w("cannot query fixed " + id + " in " + version, e);
+            }
+        }
+        return BibleUtils.fix(content, shangti, zhCn);
+    }
+
+    public void deleteFixed(String version) {
+        //noinspection ResultOfMethodCallIgnored
+        ChapterPack.getFile(mContext, version).delete();
+        File file = VersionsComponent.getFile(mContext, version);
+        if (file == null) {
+            return;
+        }
+        synchronized (fixedLock) {
+            closeFixed(version);
+        }
+        SQLiteDatabase.deleteDatabase(getFixedFile(file, version));
+    }
+
+    private SQLiteDatabase acquireFixed(String version, boolean zhCn) {
+        synchronized (fixedLock) {
+            if (mFixed != null && version.equals(mFixedVersion) && zhCn == mFixedZhCn) {
+                return mFixed;
+            }
+            File file = VersionsComponent.getFile(mContext, version);
+            if (file == null) {
+                return null;
+            }
+            File fixed = getFixedFile(file, version);
+            if (!isFixed(version, file, fixed)) {
+                prepare(version, zhCn);
+                return null;
+            }
+            SQLiteDatabase database;
+            try {
+                database = SQLiteDatabase.openDatabase(fixed.getAbsolutePath(), null, DATABASE_FLAGS);
+            } catch (SQLiteException e) {
+                LogUtils.w("cannot open fixed " + fixed, e);
+                SQLiteDatabase.deleteDatabase(fixed);
+                return null;
+            }
+            if (zhCn != isTrue(getMetadata(database, METADATA_ZHCN))
+                    || Build.VERSION.SDK_INT != getInt(getMetadata(database, METADATA_SDK))) {
+                LogUtils.d("outdated fixed \"" + database.getPath() + "\"");
+                database.close();
+                SQLiteDatabase.deleteDatabase(fixed);
+                prepare(version, zhCn);
+                return null;
+            }
+            closeFixed();
+            mFixed = database;
+            mFixedVersion = version;
+            mFixedZhCn = zhCn;
+            LogUtils.d("open fixed \"" + database.getPath() + "\"");
+            return database;
+        }
+    }
+
+    private static String getMetadata(SQLiteDatabase database, String name) {
+        try (
+                Cursor cursor = database.query(TABLE_METADATA, new String[] {"value"}, "name = ?",
+                        new String[] {name}, null, null, null, "1")
+        ) {
+            if (cursor != null && cursor.moveToFirst()) {
+                return cursor.getString(0);
+            }
+        } catch (SQLiteException e) {
+            LogUtils.w("cannot get " + name + " from " + database.getPath(), e);
+        }
+        return null;
+    }
+
+    private static boolean isTrue(String value) {
+        return "1".equals(value);
+    }
+
+    private static int getInt(String value) {
+        try {
+            return value == null ? 0 : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private void closeFixed() {
+        if (mFixed != null) {
+            LogUtils.d("close fixed \"" + mFixed.getPath() + "\"");
+            mFixed.close();
+            mFixed = null;
+            mFixedVersion = null;
+        }
+    }
+
+    private void closeFixed(String version) {
+        if (version.equals(mFixedVersion)) {
+            closeFixed();
+        }
+    }
+
+    private void buildFixed(String version, boolean zhCn) {
+        try {
+            File file = VersionsComponent.getFile(mContext, version);
+            if (file == null) {
+                return;
+            }
+            File fixed = getFixedFile(file, version);
+            if (!isFixed(version, file, fixed)) {
+                synchronized (fixedLock) {
+                    closeFixed(version);
+                }
+                long start = System.currentTimeMillis();
+                if (buildFixed(file, fixed, zhCn)) {
+                    LogUtils.d("build fixed " + fixed + " in " + (System.currentTimeMillis() - start) + "ms");
+                }
+            }
+            File pack = ChapterPack.getFile(mContext, version);
+            if (!ChapterPack.isPacked(mContext, version, file, pack)) {
+                long start = System.currentTimeMillis();
+                if (buildPack(file, pack)) {
+                    LogUtils.d("build pack " + pack + " in " + (System.currentTimeMillis() - start) + "ms");
+                }
+            }
+        } finally {
+            synchronized (mBuilding) {
+                mBuilding.remove(version);
+            }
+        }
+    }
+
+    private boolean buildFixed(File file, File fixed, boolean zhCn) {
+        File tempFile = new File(fixed.getParentFile(), fixed.getName() + ".tmp");
+        SQLiteDatabase.deleteDatabase(tempFile);
+        try (
+                SQLiteDatabase source = SQLiteDatabase.openDatabase(file.getAbsolutePath(), null, DATABASE_FLAGS);
+                SQLiteDatabase target = SQLiteDatabase.openDatabase(tempFile.getAbsolutePath(), null, FIXED_FLAGS)
+        ) {
+            target.execSQL("CREATE TABLE " + TABLE_METADATA + " (name TEXT PRIMARY KEY, value TEXT)");
+            target.execSQL("CREATE TABLE " + TABLE_FIXED + " (id INTEGER, options INTEGER, content TEXT, " +
+                    "PRIMARY KEY (id, options))");
+            target.beginTransaction();
+            try (
+                    SQLiteStatement insertMetadata = target.compileStatement("INSERT INTO " + TABLE_METADATA +
+                            " VALUES (?, ?)");
+                    SQLiteStatement insertFixed = target.compileStatement("INSERT INTO " + TABLE_FIXED +
+                            " VALUES (?, ?, ?)");
+                    Cursor cursor = source.query(VersionProvider.TABLE_CHAPTERS, new String[] {"id", "content"},
+                            null, null, null, null, "id ASC")
+            ) {
+                insertMetadata.bindString(1, METADATA_ZHCN);
+                insertMetadata.bindString(2, zhCn ? "1" : "0");
+                insertMetadata.executeInsert();
+                insertMetadata.bindString(1, METADATA_SDK);
+                insertMetadata.bindString(2, String.valueOf(Build.VERSION.SDK_INT));
+                insertMetadata.executeInsert();
+                while (cursor != null && cursor.moveToNext()) {
+                    long id = cursor.getLong(0);
+                    String content = cursor.getString(1);
+                    if (content == null) {
+                        continue;
+                    }
+                    for (int options : new int[] {0, OPTION_SHANGTI}) {
+                        String fixedContent = BibleUtils.fix(content, options == OPTION_SHANGTI, zhCn);
+                        if (!fixedContent.equals(content)) {
+                            insertFixed.bindLong(1, id);
+                            insertFixed.bindLong(2, options);
+                            insertFixed.bindString(3, fixedContent);
+                            insertFixed.executeInsert();
+                        }
+                    }
+                }
+                target.setTransactionSuccessful();
+            } finally {
+                target.endTransaction();
+            }
+        } catch (SQLiteException e) {
+            LogUtils.w("cannot build fixed for " + file, e);
+            SQLiteDatabase.deleteDatabase(tempFile);
+            return false;
+        }
+        if (!tempFile.renameTo(fixed)) {
+            LogUtils.w("cannot rename " + tempFile + " to " + fixed);
+            SQLiteDatabase.deleteDatabase(tempFile);
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean buildPack(File file, File pack) {
+        try (
+                SQLiteDatabase source = SQLiteDatabase.openDatabase(file.getAbsolutePath(), null, DATABASE_FLAGS)
+        ) {
+            return ChapterPack.write(source, pack);
+        } catch (SQLiteException | IOException e) {
+            LogUtils.w("cannot build pack for " + file, e);
+            return false;
+        }
+    }
+
+    private boolean isFixed(String version, File file, File fixed) {
+        return VersionsComponent.isUpToDate(mContext, version, file, fixed);
+    }
+
+    private File getFixedFile(File file, String version) {
+        return VersionsComponent.getDerivedFile(mContext, file, version + FIXED_SUFFIX);
+    }
+
+}
@@ -0,0 +1,217 @@
+package me.piebridge.bible.component;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.provider.BaseColumns;
+
+import androidx.collection.SimpleArrayMap;
+import androidx.core.content.ContextCompat;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import me.piebridge.bible.provider.VersionProvider;
+import me.piebridge.bible.utils.LogUtils;
+
+/**
+ * Chapters of a version packed in {@code <version>.chapters}, read through a memory map.
+ * <p>
+ * Layout, all integers big endian: magic and format, then records in id order, each as the id
+ * and osis, human, previous, next, content in UTF-8 prefixed by length ({@code -1} for null), then
+ * offsets of the records, and at last the offset of the index and count of records.
+ */
+class ChapterPack {
+
+    private static final String SUFFIX = ".chapters";
+
+    private static final int MAGIC = 0x43485054;
+
+    private static final int FORMAT = 0x1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String[] COLUMNS = {BaseColumns._ID, VersionProvider.COLUMN_OSIS,
+            VersionProvider.COLUMN_HUMAN, VersionProvider.COLUMN_CONTENT,
+            VersionProvider.COLUMN_PREVIOUS, VersionProvider.COLUMN_NEXT};
+
+    private final MappedByteBuffer mBuffer;
+
+    private final SimpleArrayMap<String, Integer> mOffsets;
+
+    private final int mFirst;
+
+    private ChapterPack(MappedByteBuffer buffer, SimpleArrayMap<String, Integer> offsets, int first) {
+        this.mBuffer = buffer;
+        this.mOffsets = offsets;
+        this.mFirst = first;
+    }
+
+    /**
+     * @return pack in the internal storage, as a mapped file on removable storage may be gone
+     */
+    static File getFile(Context context, String version) {
+        return new File(ContextCompat.getNoBackupFilesDir(context), version + SUFFIX);
+    }
+
+    static boolean isPacked(Context context, String version, File file, File pack) {
+        return VersionsComponent.isUpToDate(context, version, file, pack);
+    }
+
+    /**
+     * @return pack of the translation database, or null if it's missing, outdated or invalid
+     */
+    static ChapterPack open(Context context, String version, File file, File pack) {
+        if (!isPacked(context, version, file, pack)) {
+            return null;
+        }
+        try (
+                RandomAccessFile raf = new RandomAccessFile(pack, "r");
+                FileChannel channel = raf.getChannel()
+        ) {
+            // the mapping is still valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return open(buffer);
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            LogUtils.w("cannot open pack " + pack, e);
+            return null;
+        }
+    }
+
+    private static ChapterPack open(MappedByteBuffer buffer) {
+        int size = buffer.limit();
+        if (size < 0x10 || buffer.getInt(0) != MAGIC || buffer.getInt(0x4) != FORMAT) {
+            throw new IllegalArgumentException("invalid header");
+        }
+        int index = buffer.getInt(size - 0x8);
+        int count = buffer.getInt(size - 0x4);
+        if (count <= 0 || index < 0x8 || index + count * 0x4 != size - 0x8) {
+            throw new IllegalArgumentException("invalid index");
+        }
+        SimpleArrayMap<String, Integer> offsets = new SimpleArrayMap<>(count);
+        ByteBuffer record = buffer.duplicate();
+        for (int i = 0; i < count; ++i) {
+            int offset = buffer.getInt(index + i * 0x4);
+            record.position(offset + 0x4);
+            String osis = getString(record);
+            // keep the first one, as {@code order by id limit 1} of the database
+            if (!offsets.containsKey(osis)) {
+                offsets.put(osis, offset);
+            }
+        }
+        return new ChapterPack(buffer, offsets, buffer.getInt(index));
+    }
+
+    /**
+     * @param osis  osis, or {@code null} for the first chapter
+     * @param intro osis without intro, i.e. the osis is an intro missing in the version
+     * @return cursor as {@link VersionProvider#COLUMNS_CHAPTER}, or null
+     */
+    Cursor query(String osis, String intro) {
+        int offset;
+        if (osis == null) {
+            offset = mFirst;
+        } else {
+            offset = getOffset(osis);
+            int introOffset = getOffset(intro);
+            // records are in id order
+            if (offset < 0 || (introOffset >= 0 && introOffset < offset)) {
+                offset = introOffset;
+            }
+        }
+        if (offset < 0) {
+            return null;
+        }
+        ByteBuffer record = mBuffer.duplicate();
+        record.position(offset);
+        MatrixCursor cursor = new MatrixCursor(COLUMNS, 1);
+        int id = record.getInt();
+        String curr = getString(record);
+        String human = getString(record);
+        String previous = getString(record);
+        String next = getString(record);
+        String content = getString(record);
+        cursor.addRow(new Object[] {id, curr, human, content, previous, next});
+        return cursor;
+    }
+
+    private int getOffset(String osis) {
+        Integer offset = osis == null ? null : mOffsets.get(osis);
+        return offset == null ? -1 : offset;
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        ByteBuffer slice = buffer.slice();
+        slice.limit(length);
+        buffer.position(buffer.position() + length);
+        return UTF_8.decode(slice).toString();
+    }
+
+    /**
+     * pack chapters of the translation database, via a temp file
+     */
+    static boolean write(SQLiteDatabase source, File pack) throws IOException {
+        File tempFile = new File(pack.getParentFile(), pack.getName() + ".tmp");
+        int count = 0;
+        try (
+                DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+                Cursor cursor = source.query(VersionProvider.TABLE_CHAPTERS, new String[] {"id",
+                                "reference_osis", "reference_human", "previous_reference_osis",
+                                "next_reference_osis", "content"},
+                        null, null, null, null, "id ASC")
+        ) {
+            os.writeInt(MAGIC);
+            os.writeInt(FORMAT);
+            int[] offsets = new int[cursor == null ? 0 : cursor.getCount()];
+            while (cursor != null && cursor.moveToNext()) {
+                offsets[count++] = os.size();
+                os.writeInt(cursor.getInt(0));
+                for (int i = 1; i < 0x6; ++i) {
+                    putString(os, cursor.getString(i));
+                }
+            }
+            int index = os.size();
+            for (int i = 0; i < count; ++i) {
+                os.writeInt(offsets[i]);
+            }
+            os.writeInt(index);
+            os.writeInt(count);
+        } catch (IOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            throw e;
+        }
+        if (count == 0 || !tempFile.renameTo(pack)) {
+            LogUtils.w("cannot pack " + count + " chapters to " + pack);
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            return false;
+        }
+        return true;
+    }
+
+    private static void putString(DataOutputStream os, String s) throws IOException {
+        if (s == null) {
+            os.writeInt(-1);
+        } else {
+            byte[] bytes = s.getBytes(UTF_8);
+            os.writeInt(bytes.length);
+            os.write(bytes);
+        }
+    }
+
+}
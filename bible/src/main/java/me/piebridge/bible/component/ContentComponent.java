@@ -0,0 +1,87 @@
+package me.piebridge.bible.component;
+
+import androidx.collection.LongSparseArray;
+import androidx.collection.LruCache;
+
+/**
+ * Contents of chapters in process, bundles carry the id instead of the compressed content.
+ * <p>
+ * Contents are referenced by cached chapters and shown pages. Released ones are kept in a small
+ * lru, so ids in flight can still be resolved. Ids don't survive process death, such bundles should
+ * be retrieved again.
+ */
+public class ContentComponent {
+
+    private static final int MAX_RELEASED = 0x100000;
+
+    private final LongSparseArray<Content> mContents = new LongSparseArray<>();
+
+    private final LruCache<Long, String> mReleased = new LruCache<Long, String>(MAX_RELEASED) {
+        @Override
+        protected int sizeOf(Long key, String value) {
+            return value.length() * 2;
+        }
+    };
+
+    // ids of a previous process are less than ids of this one
+    private long mLastId = System.currentTimeMillis() << 0x10;
+
+    /**
+     * @return id of the content, not referenced yet
+     */
+    public synchronized long put(String content) {
+        long id = ++mLastId;
+        mReleased.put(id, content);
+        return id;
+    }
+
+    /**
+     * @return content of the id, or null if it's gone
+     */
+    public synchronized String get(long id) {
+        Content content = mContents.get(id);
+        if (content != null) {
+            return content.content;
+        } else {
+            return mReleased.get(id);
+        }
+    }
+
+    /**
+     * @return whether the content is still there, should be released by {@link #release(long)}
+     */
+    public synchronized boolean acquire(long id) {
+        Content content = mContents.get(id);
+        if (content == null) {
+            String released = mReleased.remove(id);
+            if (released == null) {
+                return false;
+            }
+            content = new Content(released);
+            mContents.put(id, content);
+        }
+        content.references++;
+        return true;
+    }
+
+    public synchronized void release(long id) {
+        Content content = mContents.get(id);
+        if (content != null && --content.references == 0) {
+            mContents.remove(id);
+            mReleased.put(id, content.content);
+        }
+    }
+
+    private static class Content {
+
+        final String content;
+
+        int references;
+
+        Content(String content) {
+            this.content = content;
+        }
+
+    }
+
+}
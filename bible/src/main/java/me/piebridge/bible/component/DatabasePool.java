@@ -0,0 +1,137 @@
+package me.piebridge.bible.component;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+
+import androidx.collection.ArrayMap;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import me.piebridge.bible.utils.LogUtils;
+
+/**
+ * Read only handles of translation databases, leased by reference count.
+ * <p>
+ * A version may have several handles, a new one is opened when all are leased, so readers don't
+ * queue on one connection. A retired handle is closed once its last lease is released, so a
+ * cursor should keep its lease until it's closed, see {@link LeasedCursor}.
+ */
+class DatabasePool {
+
+    private static final int DATABASE_FLAGS = SQLiteDatabase.OPEN_READONLY | SQLiteDatabase.NO_LOCALIZED_COLLATORS;
+
+    private static final int MAX_HANDLES = 0x2;
+
+    private final Context mContext;
+
+    private final ArrayMap<String, List<Handle>> mHandles = new ArrayMap<>();
+
+    private final ArrayMap<SQLiteDatabase, Handle> mLeased = new ArrayMap<>();
+
+    DatabasePool(Context context) {
+        this.mContext = context;
+    }
+
+    /**
+     * @return database of the version, should be released by {@link #release(SQLiteDatabase)}
+     */
+    synchronized SQLiteDatabase acquire(String version) {
+        List<Handle> handles = mHandles.get(version);
+        Handle handle = null;
+        if (handles != null) {
+            for (Handle h : handles) {
+                if (handle == null || h.leases < handle.leases) {
+                    handle = h;
+                }
+            }
+        }
+        if (handle == null || (handle.leases > 0 && handles.size() < MAX_HANDLES)) {
+            SQLiteDatabase database = open(version);
+            if (database != null) {
+                if (handles == null) {
+                    handles = new ArrayList<>();
+                    mHandles.put(version, handles);
+                }
+                handle = new Handle(database);
+                handles.add(handle);
+            }
+        }
+        if (handle == null) {
+            return null;
+        }
+        handle.leases++;
+        mLeased.put(handle.database, handle);
+        return handle.database;
+    }
+
+    synchronized void release(SQLiteDatabase database) {
+        if (database == null) {
+            return;
+        }
+        Handle handle = mLeased.get(database);
+        if (handle == null) {
+            LogUtils.w("release unknown database \"" + database.getPath() + "\"");
+            return;
+        }
+        if (--handle.leases == 0) {
+            mLeased.remove(database);
+            if (handle.retired) {
+                close(handle);
+            }
+        }
+    }
+
+    /**
+     * close handles of the version, leased ones are closed when released
+     */
+    synchronized void retire(String version) {
+        List<Handle> handles = mHandles.remove(version);
+        if (handles == null) {
+            return;
+        }
+        for (Handle handle : handles) {
+            handle.retired = true;
+            if (handle.leases == 0) {
+                close(handle);
+            }
+        }
+    }
+
+    private SQLiteDatabase open(String version) {
+        File file = VersionsComponent.getFile(mContext, version);
+        if (file == null || !file.isFile()) {
+            return null;
+        }
+        try {
+            SQLiteDatabase database = SQLiteDatabase.openDatabase(file.getAbsolutePath(), null, DATABASE_FLAGS);
+            LogUtils.d("open database \"" + database.getPath() + "\"");
+            return database;
+        } catch (SQLiteException e) {
+            LogUtils.d("cannot open " + file, e);
+            return null;
+        }
+    }
+
+    private static void close(Handle handle) {
+        LogUtils.d("close database \"" + handle.database.getPath() + "\"");
+        handle.database.close();
+    }
+
+    private static class Handle {
+
+        final SQLiteDatabase database;
+
+        int leases;
+
+        boolean retired;
+
+        Handle(SQLiteDatabase database) {
+            this.database = database;
+        }
+
+    }
+
+}
@@ -0,0 +1,36 @@
+package me.piebridge.bible.component;
+
+import android.database.Cursor;
+import android.database.CursorWrapper;
+
+/**
+ * Cursor holding the lease of its database, released when it's closed.
+ * <p>
+ * A cursor is filled lazily, by window, so its database should stay open until it's closed.
+ */
+public class LeasedCursor extends CursorWrapper {
+
+    private final Runnable mRelease;
+
+    private boolean mReleased;
+
+    public LeasedCursor(Cursor cursor, Runnable release) {
+        super(cursor);
+        this.mRelease = release;
+    }
+
+    @Override
+    public void close() {
+        try {
+            super.close();
+        } finally {
+            synchronized (this) {
+                if (!mReleased) {
+                    mReleased = true;
+                    mRelease.run();
+                }
+            }
+        }
+    }
+
+}
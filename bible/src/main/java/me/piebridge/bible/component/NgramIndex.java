@@ -0,0 +1,370 @@
+package me.piebridge.bible.component;
+
+import android.database.Cursor;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Unigram/bigram inverted index over {@code verses.unformatted}, for languages without word
+ * separators, i.e. Chinese.
+ * <p>
+ * Layout, big endian: header (magic, format, verses, keys, postings size), verse ids,
+ * sorted (key, offset) pairs, then postings as varint count and varint deltas of verse ordinals.
+ * A query only does posting-list intersections, the result is a superset and should be verified.
+ */
+class NgramIndex {
+
+    private static final int MAGIC = 0x4e47524d;
+
+    private static final int FORMAT = 1;
+
+    private static final int HEADER_SIZE = 20;
+
+    private static final int ORDINAL_BITS = 20;
+
+    private static final int MAX_VERSES = 1 << ORDINAL_BITS;
+
+    private final ByteBuffer mBuffer;
+
+    private final int mVerseCount;
+
+    private final int mKeyCount;
+
+    private final int mKeysOffset;
+
+    private final int mPostingsOffset;
+
+    private NgramIndex(ByteBuffer buffer) throws IOException {
+        mBuffer = buffer;
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT) {
+            throw new IOException("invalid ngram index");
+        }
+        mVerseCount = buffer.getInt(8);
+        mKeyCount = buffer.getInt(12);
+        int postingsSize = buffer.getInt(16);
+        mKeysOffset = HEADER_SIZE + 4 * mVerseCount;
+        mPostingsOffset = mKeysOffset + 8 * mKeyCount;
+        if (mVerseCount < 0 || mKeyCount < 0 || mPostingsOffset + postingsSize != buffer.limit()) {
+            throw new IOException("corrupt ngram index");
+        }
+    }
+
+    static NgramIndex open(File file) throws IOException {
+        try (
+                RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()
+        ) {
+            // the mapping stays valid after the channel is closed
+            return new NgramIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    int getVerseCount() {
+        return mVerseCount;
+    }
+
+    /**
+     * @param cursor verses with id at column 0 and unformatted at column 1, ordered by id
+     */
+    static void build(Cursor cursor, File file) throws IOException {
+        int count = cursor.getCount();
+        if (count >= MAX_VERSES) {
+            throw new IOException("too many verses: " + count);
+        }
+        // count grams first, so pairs are allocated once at the real size and sorted in place
+        long total = 0;
+        int[] grams = new int[0];
+        while (cursor.moveToNext()) {
+            String unformatted = cursor.getString(1);
+            if (unformatted != null) {
+                total += grams(unformatted, true, grams);
+            }
+        }
+        if (total > Integer.MAX_VALUE - 0x8) {
+            throw new IOException("too many grams: " + total);
+        }
+        int[] ids = new int[count];
+        long[] sorted = new long[(int) total];
+        int index = 0;
+        grams = new int[0x100];
+        int ordinal = 0;
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            ids[ordinal] = cursor.getInt(0);
+            String unformatted = cursor.getString(1);
+            if (unformatted != null) {
+                int size = grams(unformatted, true, grams);
+                if (size > grams.length) {
+                    grams = new int[size];
+                    size = grams(unformatted, true, grams);
+                }
+                for (int i = 0; i < size; ++i) {
+                    sorted[index++] = ((grams[i] & 0xffffffffL) << ORDINAL_BITS) | ordinal;
+                }
+            }
+            ++ordinal;
+        }
+        Arrays.sort(sorted);
+        // pairs are sorted by key then ordinal, so each posting list is ascending
+        ByteArrayBuilder postings = new ByteArrayBuilder(sorted.length * 2);
+        IntList keys = new IntList(0x1000);
+        IntList offsets = new IntList(0x1000);
+        int start = 0;
+        while (start < sorted.length) {
+            long key = sorted[start] >>> ORDINAL_BITS;
+            int end = start;
+            int unique = 0;
+            long previous = -1;
+            while (end < sorted.length && (sorted[end] >>> ORDINAL_BITS) == key) {
+                if (sorted[end] != previous) {
+                    ++unique;
+                    previous = sorted[end];
+                }
+                ++end;
+            }
+            keys.add((int) key);
+            offsets.add(postings.size());
+            postings.writeVarint(unique);
+            int last = 0;
+            previous = -1;
+            for (int i = start; i < end; ++i) {
+                if (sorted[i] == previous) {
+                    continue;
+                }
+                previous = sorted[i];
+                int value = (int) (sorted[i] & (MAX_VERSES - 1));
+                postings.writeVarint(value - last);
+                last = value;
+            }
+            start = end;
+        }
+
+        try (
+                DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))
+        ) {
+            dos.writeInt(MAGIC);
+            dos.writeInt(FORMAT);
+            dos.writeInt(count);
+            dos.writeInt(keys.size());
+            dos.writeInt(postings.size());
+            for (int id : ids) {
+                dos.writeInt(id);
+            }
+            for (int i = 0; i < keys.size(); ++i) {
+                dos.writeInt(keys.get(i));
+                dos.writeInt(offsets.get(i));
+            }
+            postings.writeTo(dos);
+        }
+    }
+
+    /**
+     * @return candidate verse ids in ascending order, each contains every gram of the query
+     */
+    int[] search(String query) {
+        int[] grams = new int[query.length() + 1];
+        int size = grams(query, false, grams);
+        if (size == 0) {
+            return new int[0];
+        }
+        int[] offsets = new int[size];
+        int[] counts = new int[size];
+        for (int i = 0; i < size; ++i) {
+            int index = find(grams[i]);
+            if (index < 0) {
+                return new int[0];
+            }
+            offsets[i] = mPostingsOffset + mBuffer.getInt(mKeysOffset + 8 * index + 4);
+            counts[i] = readVarint(offsets, i);
+        }
+        // intersect from the rarest gram
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; ++i) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (o1, o2) -> Integer.compare(counts[o1], counts[o2]));
+        int[] result = decode(offsets, order[0], counts[order[0]]);
+        int length = result.length;
+        for (int i = 1; i < size && length > 0; ++i) {
+            length = intersect(result, length, decode(offsets, order[i], counts[order[i]]));
+        }
+        int[] ids = new int[length];
+        for (int i = 0; i < length; ++i) {
+            ids[i] = mBuffer.getInt(HEADER_SIZE + 4 * result[i]);
+        }
+        return ids;
+    }
+
+    private int find(int key) {
+        long target = key & 0xffffffffL;
+        int low = 0;
+        int high = mKeyCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long value = mBuffer.getInt(mKeysOffset + 8 * mid) & 0xffffffffL;
+            if (value < target) {
+                low = mid + 1;
+            } else if (value > target) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int[] decode(int[] offsets, int index, int count) {
+        int[] values = new int[count];
+        int last = 0;
+        for (int i = 0; i < count; ++i) {
+            last += readVarint(offsets, index);
+            values[i] = last;
+        }
+        return values;
+    }
+
+    private int readVarint(int[] offsets, int index) {
+        int offset = offsets[index];
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = mBuffer.get(offset++);
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        offsets[index] = offset;
+        return value;
+    }
+
+    private static int intersect(int[] result, int length, int[] values) {
+        int size = 0;
+        int j = 0;
+        for (int i = 0; i < length && j < values.length; ++i) {
+            int value = result[i];
+            while (j < values.length && values[j] < value) {
+                ++j;
+            }
+            if (j < values.length && values[j] == value) {
+                result[size++] = value;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * grams of whitespace separated segments: bigrams, or the unigram for single char segment,
+     * all unigrams are included when indexing.
+     *
+     * @return count of grams, may larger than grams.length, then grams is incomplete
+     */
+    private static int grams(String s, boolean unigrams, int[] grams) {
+        int size = 0;
+        int length = s.length();
+        char previous = 0;
+        for (int i = 0; i < length; ++i) {
+            char c = normalize(s.charAt(i));
+            if (c == 0) {
+                if (!unigrams && previous != 0 && (i < 2 || normalize(s.charAt(i - 2)) == 0)) {
+                    size = put(grams, size, previous);
+                }
+            } else {
+                if (unigrams) {
+                    size = put(grams, size, c);
+                }
+                if (previous != 0) {
+                    size = put(grams, size, (previous << 16) | c);
+                }
+            }
+            previous = c;
+        }
+        if (!unigrams && previous != 0 && (length < 2 || normalize(s.charAt(length - 2)) == 0)) {
+            size = put(grams, size, previous);
+        }
+        return size;
+    }
+
+    private static int put(int[] grams, int size, int gram) {
+        if (size < grams.length) {
+            grams[size] = gram;
+        }
+        return size + 1;
+    }
+
+    private static char normalize(char c) {
+        if (Character.isWhitespace(c) || Character.isSpaceChar(c)) {
+            return 0;
+        } else if (c >= 'A' && c <= 'Z') {
+            return (char) (c + ('a' - 'A'));
+        } else {
+            return c;
+        }
+    }
+
+    private static class IntList {
+
+        private int[] mValues;
+
+        private int mSize;
+
+        IntList(int capacity) {
+            mValues = new int[capacity];
+        }
+
+        void add(int value) {
+            if (mSize == mValues.length) {
+                mValues = Arrays.copyOf(mValues, mSize * 2);
+            }
+            mValues[mSize++] = value;
+        }
+
+        int get(int index) {
+            return mValues[index];
+        }
+
+        int size() {
+            return mSize;
+        }
+
+    }
+
+    private static class ByteArrayBuilder {
+
+        private byte[] mBytes;
+
+        private int mSize;
+
+        ByteArrayBuilder(int capacity) {
+            mBytes = new byte[Math.max(capacity, 0x10)];
+        }
+
+        void writeVarint(int value) {
+            if (mSize + 5 > mBytes.length) {
+                mBytes = Arrays.copyOf(mBytes, mBytes.length * 2);
+            }
+            while ((value & ~0x7f) != 0) {
+                mBytes[mSize++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            mBytes[mSize++] = (byte) value;
+        }
+
+        int size() {
+            return mSize;
+        }
+
+        void writeTo(DataOutputStream dos) throws IOException {
+            dos.write(mBytes, 0, mSize);
+        }
+
+    }
+
+}
@@ -0,0 +1,479 @@
+package me.piebridge.bible.component;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.text.TextUtils;
+
+import androidx.collection.ArraySet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import me.piebridge.bible.provider.VersionProvider;
+import me.piebridge.bible.utils.BibleUtils;
+import me.piebridge.bible.utils.LogUtils;
+
+/**
+ * Full-text index for verse search, one index file per translation.
+ * <p>
+ * The index lives next to the translation database, {@code <version>.fts} for FTS4, or
+ * {@code <version>.ngram} for CJK translations, which the "simple" tokenizer can't segment.
+ * It's built in background on first open, queries fall back to {@code like} until it's ready.
+ * <p>
+ * Search is always {@code like}, as substrings, the index only narrows verses to check. FTS4
+ * matches whole words, so only words of the query which can't be inside a word are matched, see
+ * {@link #buildMatch(String)}, and a query without such words, e.g. "ness", is a plain {@code like}.
+ */
+public class SearchComponent extends Handler {
+
+    private static final int BUILD = 0;
+
+    private static final int DATABASE_FLAGS = SQLiteDatabase.OPEN_READONLY | SQLiteDatabase.NO_LOCALIZED_COLLATORS;
+
+    private static final int INDEX_FLAGS = SQLiteDatabase.CREATE_IF_NECESSARY | SQLiteDatabase.NO_LOCALIZED_COLLATORS;
+
+    private static final String INDEX_SUFFIX = ".fts";
+
+    private static final String NGRAM_SUFFIX = ".ngram";
+
+    private static final int CJK_SAMPLES = 0x20;
+
+    private static final String TABLE_SEARCH = "search";
+
+    private static final String[] COLUMNS_VERSES = {"v.id as _id", "v.book as book", "v.human as human",
+            "v.verse as verse", "v.unformatted as unformatted"};
+
+    private static final String[] COLUMNS_COUNT = {"count(v.id) as _count"};
+
+    private final Context mContext;
+
+    private final Set<String> mBuilding = new ArraySet<>();
+
+    private SQLiteDatabase mIndex;
+
+    private String mIndexVersion;
+
+    private NgramIndex mNgram;
+
+    private String mNgramVersion;
+
+    private final Object indexLock = new Object();
+
+    public SearchComponent(Context context) {
+        super(newLooper());
+        this.mContext = context;
+    }
+
+    private static Looper newLooper() {
+        HandlerThread thread = new HandlerThread("Index");
+        thread.start();
+        return thread.getLooper();
+    }
+
+    @Override
+    public void handleMessage(Message msg) {
+        switch (msg.what) {
+            case BUILD:
+                buildIndex((String) msg.obj);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * schedule index building for version if it's missing or outdated
+     */
+    public void prepare(String version) {
+        if (TextUtils.isEmpty(version)) {
+            return;
+        }
+        File file = VersionsComponent.getFile(mContext, version);
+        if (file == null || isIndexed(file, version)) {
+            return;
+        }
+        synchronized (mBuilding) {
+            if (mBuilding.contains(version)) {
+                return;
+            }
+            mBuilding.add(version);
+        }
+        obtainMessage(BUILD, version).sendToTarget();
+    }
+
+    /**
+     * @param after verses after this id, for keyset paging
+     * @param limit max verses, 0 for all
+     * @param count whether to return {@code _count} only
+     * @return cursor in shape of {@link VersionProvider#COLUMNS_VERSES}, same verses as {@code like},
+     * or null if there is no usable index or match, caller should fall back to {@code like}. The
+     * index stays open until it's closed.
+     */
+    public Cursor queryVerse(String version, String query, String books, long after, int limit, boolean count) {
+        String match = buildMatch(query);
+        if (match == null) {
+            return null;
+        }
+        SQLiteDatabase index;
+        synchronized (indexLock) {
+            index = acquireIndex(version);
+            if (index != null) {
+                // closeIndex only drops its own reference
+                index.acquireReference();
+            }
+        }
+        if (index == null) {
+            prepare(version);
+            return null;
+        }
+        StringBuilder selection = new StringBuilder();
+        selection.append("s.text match ? and v.unformatted like ?");
+        if (after > 0) {
+            selection.append(" and v.id > ");
+            selection.append(after);
+        }
+        if (!TextUtils.isEmpty(books)) {
+            selection.append(" and v.book in (");
+            selection.append(books);
+            selection.append(")");
+        }
+        Cursor cursor = null;
+        try {
+            cursor = index.query(TABLE_SEARCH + " s join verses v on (v.id = s.docid)",
+                    count ? COLUMNS_COUNT : COLUMNS_VERSES,
+                    selection.toString(), new String[] {match, "%" + query + "%"}, null, null,
+                    count ? null : "v.id ASC", limit > 0 ? String.valueOf(limit) : null);
+        } catch (SQLiteException e) {
+            LogUtils.w("cannot search " + query + " in index of " + version, e);
+        } finally {
+            if (cursor == null) {
+                index.releaseReference();
+            }
+        }
+        return cursor == null ? null : new LeasedCursor(cursor, index::releaseReference);
+    }
+
+    /**
+     * @return candidate verse ids from ngram index, should be verified with {@code like},
+     * or null if there is no ngram index, or it's not selective enough to beat a scan
+     */
+    public int[] queryNgram(String version, String query) {
+        if (TextUtils.isEmpty(query)) {
+            return null;
+        }
+        NgramIndex ngram = acquireNgram(version);
+        if (ngram == null) {
+            prepare(version);
+            return null;
+        }
+        int[] ids = ngram.search(query);
+        if (ids.length > ngram.getVerseCount() / 2) {
+            LogUtils.d("ngram of " + query + " in " + version + ", candidates: " + ids.length);
+            return null;
+        }
+        return ids;
+    }
+
+    public void deleteIndex(String version) {
+        File file = VersionsComponent.getFile(mContext, version);
+        if (file == null) {
+            return;
+        }
+        synchronized (indexLock) {
+            closeIndex(version);
+        }
+        SQLiteDatabase.deleteDatabase(getIndexFile(file, version, INDEX_SUFFIX));
+        //noinspection ResultOfMethodCallIgnored
+        getIndexFile(file, version, NGRAM_SUFFIX).delete();
+    }
+
+    private SQLiteDatabase acquireIndex(String version) {
+        synchronized (indexLock) {
+            if (mIndex != null && version.equals(mIndexVersion)) {
+                return mIndex;
+            }
+            File file = VersionsComponent.getFile(mContext, version);
+            if (file == null) {
+                return null;
+            }
+            File index = getIndexFile(file, version, INDEX_SUFFIX);
+            if (!isUpToDate(version, file, index)) {
+                return null;
+            }
+            try {
+                SQLiteDatabase database = SQLiteDatabase.openDatabase(index.getAbsolutePath(), null, DATABASE_FLAGS);
+                closeIndex();
+                mIndex = database;
+                mIndexVersion = version;
+                LogUtils.d("open index \"" + database.getPath() + "\"");
+                return database;
+            } catch (SQLiteException e) {
+                LogUtils.w("cannot open index " + index, e);
+                //noinspection ResultOfMethodCallIgnored
+                index.delete();
+                return null;
+            }
+        }
+    }
+
+    private NgramIndex acquireNgram(String version) {
+        synchronized (indexLock) {
+            if (mNgram != null && version.equals(mNgramVersion)) {
+                return mNgram;
+            }
+            File file = VersionsComponent.getFile(mContext, version);
+            if (file == null) {
+                return null;
+            }
+            File index = getIndexFile(file, version, NGRAM_SUFFIX);
+            if (!isUpToDate(version, file, index)) {
+                return null;
+            }
+            try {
+                mNgram = NgramIndex.open(index);
+                mNgramVersion = version;
+                LogUtils.d("open ngram \"" + index + "\"");
+                return mNgram;
+            } catch (IOException e) {
+                LogUtils.w("cannot open ngram " + index, e);
+                //noinspection ResultOfMethodCallIgnored
+                index.delete();
+                return null;
+            }
+        }
+    }
+
+    private void closeIndex() {
+        if (mIndex != null) {
+            LogUtils.d("close index \"" + mIndex.getPath() + "\"");
+            mIndex.close();
+            mIndex = null;
+            mIndexVersion = null;
+        }
+    }
+
+    private void closeIndex(String version) {
+        if (version.equals(mIndexVersion)) {
+            closeIndex();
+        }
+        if (version.equals(mNgramVersion)) {
+            mNgram = null;
+            mNgramVersion = null;
+        }
+    }
+
+    private void buildIndex(String version) {
+        try {
+            File file = VersionsComponent.getFile(mContext, version);
+            if (file == null) {
+                return;
+            }
+            if (isIndexed(file, version)) {
+                return;
+            }
+            synchronized (indexLock) {
+                closeIndex(version);
+            }
+            long start = System.currentTimeMillis();
+            File index;
+            boolean built;
+            if (isCJK(file)) {
+                index = getIndexFile(file, version, NGRAM_SUFFIX);
+                built = buildNgram(file, index);
+            } else {
+                index = getIndexFile(file, version, INDEX_SUFFIX);
+                built = buildIndex(file, index);
+            }
+            if (built) {
+                LogUtils.d("build index " + index + " in " + (System.currentTimeMillis() - start) + "ms");
+            }
+        } finally {
+            synchronized (mBuilding) {
+                mBuilding.remove(version);
+            }
+        }
+    }
+
+    private boolean buildIndex(File file, File index) {
+        File tempFile = new File(index.getParentFile(), index.getName() + ".tmp");
+        SQLiteDatabase.deleteDatabase(tempFile);
+        try (
+                SQLiteDatabase source = SQLiteDatabase.openDatabase(file.getAbsolutePath(), null, DATABASE_FLAGS);
+                SQLiteDatabase target = SQLiteDatabase.openDatabase(tempFile.getAbsolutePath(), null, INDEX_FLAGS)
+        ) {
+            target.execSQL("CREATE TABLE verses (id INTEGER PRIMARY KEY, book TEXT, human TEXT, " +
+                    "verse REAL, unformatted TEXT)");
+            target.execSQL("CREATE VIRTUAL TABLE " + TABLE_SEARCH + " USING fts4(content=\"\", text)");
+            target.beginTransaction();
+            try (
+                    SQLiteStatement insertVerse = target.compileStatement("INSERT INTO verses VALUES (?, ?, ?, ?, ?)");
+                    SQLiteStatement insertText = target.compileStatement("INSERT INTO " + TABLE_SEARCH +
+                            " (docid, text) VALUES (?, ?)");
+                    Cursor cursor = source.query(VersionProvider.TABLE_VERSES, VersionProvider.COLUMNS_VERSES,
+                            null, null, null, null, "id ASC")
+            ) {
+                while (cursor != null && cursor.moveToNext()) {
+                    long id = cursor.getLong(0);
+                    String unformatted = cursor.getString(4);
+                    if (unformatted == null) {
+                        continue;
+                    }
+                    insertVerse.bindLong(1, id);
+                    bindString(insertVerse, 2, cursor.getString(1));
+                    bindString(insertVerse, 3, cursor.getString(2));
+                    insertVerse.bindDouble(4, cursor.getDouble(3));
+                    insertVerse.bindString(5, unformatted);
+                    insertVerse.executeInsert();
+
+                    insertText.bindLong(1, id);
+                    insertText.bindString(2, normalize(unformatted));
+                    insertText.executeInsert();
+                }
+                target.setTransactionSuccessful();
+            } finally {
+                target.endTransaction();
+            }
+            target.execSQL("INSERT INTO " + TABLE_SEARCH + " (" + TABLE_SEARCH + ") VALUES ('optimize')");
+        } catch (SQLiteException e) {
+            LogUtils.w("cannot build index for " + file, e);
+            SQLiteDatabase.deleteDatabase(tempFile);
+            return false;
+        }
+        if (!tempFile.renameTo(index)) {
+            LogUtils.w("cannot rename " + tempFile + " to " + index);
+            SQLiteDatabase.deleteDatabase(tempFile);
+            return false;
+        }
+        return true;
+    }
+
+    private boolean isCJK(File file) {
+        StringBuilder sb = new StringBuilder();
+        try (
+                SQLiteDatabase source = SQLiteDatabase.openDatabase(file.getAbsolutePath(), null, DATABASE_FLAGS);
+                Cursor cursor = source.query(VersionProvider.TABLE_VERSE, new String[] {"unformatted"},
+                        null, null, null, null, "id ASC", String.valueOf(CJK_SAMPLES))
+        ) {
+            while (cursor != null && cursor.moveToNext()) {
+                sb.append(cursor.getString(0));
+            }
+        } catch (SQLiteException e) {
+            LogUtils.w("cannot open " + file, e);
+        }
+        return BibleUtils.isCJK(sb.toString());
+    }
+
+    private boolean buildNgram(File file, File index) {
+        File tempFile = new File(index.getParentFile(), index.getName() + ".tmp");
+        try (
+                SQLiteDatabase source = SQLiteDatabase.openDatabase(file.getAbsolutePath(), null, DATABASE_FLAGS);
+                Cursor cursor = source.query(VersionProvider.TABLE_VERSE, new String[] {"id", "unformatted"},
+                        null, null, null, null, "id ASC")
+        ) {
+            NgramIndex.build(cursor, tempFile);
+        } catch (SQLiteException | IOException e) {
+            LogUtils.w("cannot build ngram for " + file, e);
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            return false;
+        }
+        if (!tempFile.renameTo(index)) {
+            LogUtils.w("cannot rename " + tempFile + " to " + index);
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            return false;
+        }
+        return true;
+    }
+
+    private static void bindString(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    private boolean isIndexed(File file, String version) {
+        return isUpToDate(version, file, getIndexFile(file, version, INDEX_SUFFIX))
+                || isUpToDate(version, file, getIndexFile(file, version, NGRAM_SUFFIX));
+    }
+
+    private boolean isUpToDate(String version, File file, File index) {
+        return VersionsComponent.isUpToDate(mContext, version, file, index);
+    }
+
+    private File getIndexFile(File file, String version, String suffix) {
+        return VersionsComponent.getDerivedFile(mContext, file, version + suffix);
+    }
+
+    /**
+     * the "simple" tokenizer only splits on ascii, so turn other punctuations into space
+     */
+    static String normalize(String s) {
+        int length = s.length();
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; ++i) {
+            char c = s.charAt(i);
+            sb.append(isTokenChar(c) ? c : ' ');
+        }
+        return sb.toString();
+    }
+
+    private static boolean isTokenChar(char c) {
+        if (c < 0x80) {
+            return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+        } else {
+            return Character.isLetterOrDigit(c) || Character.isHighSurrogate(c) || Character.isLowSurrogate(c)
+                    || Character.getType(c) == Character.NON_SPACING_MARK;
+        }
+    }
+
+    /**
+     * John 3:16 -> "3 16*", as a phrase with prefix, so it matches all the text {@code like} matches.
+     * <p>
+     * The first word may be the end of a word, so it's dropped, unless the query starts with a
+     * separator; the last one may be the start of a word, so it's a prefix.
+     *
+     * @return match of words, or null if there is none, or the query has wildcards of {@code like}
+     */
+    static String buildMatch(String query) {
+        if (TextUtils.isEmpty(query) || BibleUtils.isCJK(query)
+                || query.indexOf('%') >= 0 || query.indexOf('_') >= 0) {
+            // cjk isn't segmented by "simple" tokenizer
+            return null;
+        }
+        List<String> tokens = new ArrayList<>();
+        String[] words = normalize(query).split(" ");
+        for (String word : words) {
+            if (!word.isEmpty()) {
+                tokens.add(word);
+            }
+        }
+        if (!tokens.isEmpty() && isTokenChar(query.charAt(0))) {
+            tokens.remove(0);
+        }
+        if (tokens.isEmpty()) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append('"');
+        sb.append(TextUtils.join(" ", tokens));
+        if (isTokenChar(query.charAt(query.length() - 1))) {
+            sb.append('*');
+        }
+        sb.append('"');
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,243 @@
+package me.piebridge.bible.component;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.text.TextUtils;
+
+import androidx.collection.ArrayMap;
+import androidx.collection.SimpleArrayMap;
+
+import java.util.Locale;
+
+import me.piebridge.bible.utils.LogUtils;
+
+/**
+ * Catalog of checked versions: fingerprint of the database, when its content was changed, and
+ * its metadata.
+ * <p>
+ * It's loaded into memory once, changes are written to {@code catalog.db}. Localized metadata,
+ * as {@code name_language} or {@code name_language_country}, is resolved by locale.
+ */
+class VersionCatalog extends SQLiteOpenHelper {
+
+    private static final int DATABASE_VERSION = 2;
+    private static final String DATABASE_NAME = "catalog.db";
+
+    private static final String TABLE_VERSIONS = "versions";
+    private static final String TABLE_METADATA = "metadata";
+
+    private static final String COLUMN_VERSION = "version";
+    private static final String COLUMN_MTIME = "mtime";
+    private static final String COLUMN_FINGERPRINT = "fingerprint";
+    private static final String COLUMN_CHANGED = "changed";
+    private static final String COLUMN_NAME = "name";
+    private static final String COLUMN_VALUE = "value";
+
+    private ArrayMap<String, Entry> mEntries;
+
+    VersionCatalog(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_VERSIONS + " (" +
+                COLUMN_VERSION + " TEXT PRIMARY KEY," +
+                COLUMN_MTIME + " INTEGER NOT NULL," +
+                COLUMN_FINGERPRINT + " TEXT," +
+                COLUMN_CHANGED + " INTEGER)");
+        db.execSQL("CREATE TABLE " + TABLE_METADATA + " (" +
+                COLUMN_VERSION + " TEXT NOT NULL," +
+                COLUMN_NAME + " TEXT NOT NULL," +
+                COLUMN_VALUE + " TEXT," +
+                "PRIMARY KEY (" + COLUMN_VERSION + ", " + COLUMN_NAME + "))");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 0x2) {
+            // versions would be checked again, as they have no fingerprint
+            db.execSQL("ALTER TABLE " + TABLE_VERSIONS + " ADD COLUMN " + COLUMN_FINGERPRINT + " TEXT");
+            db.execSQL("ALTER TABLE " + TABLE_VERSIONS + " ADD COLUMN " + COLUMN_CHANGED + " INTEGER");
+        }
+    }
+
+    /**
+     * @return fingerprint of the checked database, or null
+     */
+    synchronized String getFingerprint(String version) {
+        Entry entry = getEntries().get(version);
+        return entry == null ? null : entry.fingerprint;
+    }
+
+    /**
+     * @param mtime modified time of the database
+     * @return when content of the database was changed, or the modified time if it's not checked as is
+     */
+    synchronized long getChanged(String version, long mtime) {
+        Entry entry = getEntries().get(version);
+        return entry == null || entry.mtime != mtime ? mtime : entry.changed;
+    }
+
+    /**
+     * the database is touched or copied, but its content is the same
+     */
+    synchronized void setMtime(String version, long mtime) {
+        Entry entry = getEntries().get(version);
+        if (entry == null || entry.mtime == mtime) {
+            return;
+        }
+        getEntries().put(version, new Entry(mtime, entry.fingerprint, entry.changed, entry.metadata));
+        try {
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_MTIME, mtime);
+            getWritableDatabase().update(TABLE_VERSIONS, values, COLUMN_VERSION + " = ?", new String[] {version});
+        } catch (SQLiteException e) {
+            LogUtils.w("cannot save catalog of " + version, e);
+        }
+    }
+
+    /**
+     * @param locale locale to resolve localized value, or null for the plain one
+     * @return value of the metadata, or null
+     */
+    synchronized String get(String version, String name, Locale locale) {
+        Entry entry = getEntries().get(version);
+        if (entry == null) {
+            return null;
+        }
+        String value;
+        if (locale != null) {
+            String nameLanguage = name + "_" + locale.getLanguage();
+            value = entry.metadata.get(nameLanguage + "_" + locale.getCountry());
+            if (!TextUtils.isEmpty(value)) {
+                return value;
+            }
+            value = entry.metadata.get(nameLanguage);
+            if (!TextUtils.isEmpty(value)) {
+                return value;
+            }
+        }
+        value = entry.metadata.get(name);
+        return TextUtils.isEmpty(value) ? null : value;
+    }
+
+    synchronized void put(String version, long mtime, String fingerprint, SimpleArrayMap<String, String> metadata) {
+        Entry previous = getEntries().get(version);
+        long changed;
+        if (previous == null || previous.fingerprint == null) {
+            // derived files are as new as the database
+            changed = mtime;
+        } else if (previous.fingerprint.equals(fingerprint)) {
+            changed = previous.changed;
+        } else {
+            changed = System.currentTimeMillis();
+        }
+        getEntries().put(version, new Entry(mtime, fingerprint, changed, metadata));
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            db.beginTransaction();
+            try {
+                delete(db, version);
+                ContentValues values = new ContentValues();
+                values.put(COLUMN_VERSION, version);
+                values.put(COLUMN_MTIME, mtime);
+                values.put(COLUMN_FINGERPRINT, fingerprint);
+                values.put(COLUMN_CHANGED, changed);
+                db.insert(TABLE_VERSIONS, null, values);
+                for (int i = 0; i < metadata.size(); ++i) {
+                    values.clear();
+                    values.put(COLUMN_VERSION, version);
+                    values.put(COLUMN_NAME, metadata.keyAt(i));
+                    values.put(COLUMN_VALUE, metadata.valueAt(i));
+                    db.insert(TABLE_METADATA, null, values);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (SQLiteException e) {
+            LogUtils.w("cannot save catalog of " + version, e);
+        }
+    }
+
+    synchronized void remove(String version) {
+        if (getEntries().remove(version) == null) {
+            return;
+        }
+        try {
+            delete(getWritableDatabase(), version);
+        } catch (SQLiteException e) {
+            LogUtils.w("cannot remove catalog of " + version, e);
+        }
+    }
+
+    private static void delete(SQLiteDatabase db, String version) {
+        String[] args = {version};
+        db.delete(TABLE_VERSIONS, COLUMN_VERSION + " = ?", args);
+        db.delete(TABLE_METADATA, COLUMN_VERSION + " = ?", args);
+    }
+
+    private ArrayMap<String, Entry> getEntries() {
+        if (mEntries == null) {
+            mEntries = load();
+        }
+        return mEntries;
+    }
+
+    private ArrayMap<String, Entry> load() {
+        ArrayMap<String, Entry> entries = new ArrayMap<>();
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            try (
+                    Cursor cursor = db.query(TABLE_VERSIONS, new String[] {COLUMN_VERSION, COLUMN_MTIME,
+                                    COLUMN_FINGERPRINT, COLUMN_CHANGED},
+                            null, null, null, null, null)
+            ) {
+                while (cursor != null && cursor.moveToNext()) {
+                    entries.put(cursor.getString(0), new Entry(cursor.getLong(1), cursor.getString(2),
+                            cursor.getLong(3), new SimpleArrayMap<>()));
+                }
+            }
+            try (
+                    Cursor cursor = db.query(TABLE_METADATA, new String[] {COLUMN_VERSION, COLUMN_NAME, COLUMN_VALUE},
+                            null, null, null, null, null)
+            ) {
+                while (cursor != null && cursor.moveToNext()) {
+                    Entry entry = entries.get(cursor.getString(0));
+                    if (entry != null) {
+                        entry.metadata.put(cursor.getString(1), cursor.getString(2));
+                    }
+                }
+            }
+        } catch (SQLiteException e) {
+            LogUtils.w("cannot load catalog", e);
+        }
+        LogUtils.d("[catalog] versions: " + entries.size());
+        return entries;
+    }
+
+    private static class Entry {
+
+        final long mtime;
+
+        final String fingerprint;
+
+        final long changed;
+
+        final SimpleArrayMap<String, String> metadata;
+
+        Entry(long mtime, String fingerprint, long changed, SimpleArrayMap<String, String> metadata) {
+            this.mtime = mtime;
+            this.fingerprint = fingerprint;
+            this.changed = changed;
+            this.metadata = metadata;
+        }
+
+    }
+
+}
@@ -1,19 +1,31 @@
 package me.piebridge.bible.component;
 
+import android.app.ActivityManager;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
 import android.text.TextUtils;
+import android.util.SparseArray;
+
+import androidx.collection.LruCache;
+import androidx.core.app.ActivityManagerCompat;
 
 import java.io.File;
 import java.math.BigDecimal;
+import java.nio.BufferUnderflowException;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import me.piebridge.bible.BibleApplication;
+import me.piebridge.bible.R;
 import me.piebridge.bible.provider.VersionProvider;
 import me.piebridge.bible.utils.LogUtils;
 
@@ -22,26 +34,51 @@ import me.piebridge.bible.utils.LogUtils;
  */
 public class VersionComponent {
 
-    private static final int DATABASE_FLAGS = SQLiteDatabase.OPEN_READONLY | SQLiteDatabase.NO_LOCALIZED_COLLATORS;
-
     public static final String INTRO = "int";
 
-    private SQLiteDatabase mDatabase = null;
-    private SQLiteDatabase oDatabase = null;
+    public static final int MAX_PARALLEL = 0x3;
+
+    private final DatabasePool mPool;
     private String mDatabaseVersion = null;
     private final Object databaseLock = new Object();
 
-    private String mFirstBook;
-    private String mLastBook;
-    private final Map<String, String> mBooks;
-    private final Map<String, List<String>> mChapters;
+    // recently used translations, with their books, handles are retired once evicted
+    private final LruCache<String, Translation> mTranslations;
+    private volatile Translation mTranslation = new Translation(new LinkedHashMap<>(), new String[2]);
 
     private final Context mContext;
 
+    private final ThreadPoolExecutor mExecutor;
+
     public VersionComponent(Context context) {
         this.mContext = context;
-        this.mBooks = new LinkedHashMap<>();
-        this.mChapters = new LinkedHashMap<>();
+        this.mPool = new DatabasePool(context);
+        this.mTranslations = new LruCache<String, Translation>(getMaxTranslations(context)) {
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Translation oldValue, Translation newValue) {
+                if (newValue == null) {
+                    // leased handles are closed when released
+                    mPool.retire(key);
+                }
+            }
+        };
+        this.mExecutor = new ThreadPoolExecutor(MAX_PARALLEL, MAX_PARALLEL, 0x1e, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>());
+        this.mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return max recently used translations, as {@code R.integer.max_translations},
+     * at least versions of a parallel page
+     */
+    private static int getMaxTranslations(Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager == null || ActivityManagerCompat.isLowRamDevice(activityManager)
+                || activityManager.getMemoryClass() < 0x80) {
+            return MAX_PARALLEL;
+        } else {
+            return Math.max(MAX_PARALLEL, context.getResources().getInteger(R.integer.max_translations));
+        }
     }
 
     public String getVersion() {
@@ -56,26 +93,50 @@ public class VersionComponent {
         if (file == null || !file.isFile()) {
             return false;
         }
-        if (mDatabase != null && version.equals(mDatabaseVersion) && !force) {
+        if (version.equals(mDatabaseVersion) && !force) {
             return true;
         }
-        SQLiteDatabase database;
-        try {
-            database = SQLiteDatabase.openDatabase(file.getAbsolutePath(), null, DATABASE_FLAGS);
-            LogUtils.d("open database \"" + database.getPath() + "\"");
-        } catch (SQLiteException e) {
-            LogUtils.d("cannot open " + file, e);
+        if (force) {
+            mTranslations.remove(version);
+        }
+        Translation translation = getTranslation(version);
+        if (translation == null) {
             return false;
         }
         synchronized (databaseLock) {
-            oDatabase = mDatabase;
-            mDatabase = database;
             mDatabaseVersion = version;
+            mTranslation = translation;
         }
-        loadBooks();
+        LogUtils.d("first: " + translation.firstBook + ", last: " + translation.lastBook);
+        LogUtils.d("books: " + translation.books);
         return true;
     }
 
+    /**
+     * @return translation from recently used ones, or loaded, null if it can't be opened
+     */
+    private Translation getTranslation(String version) {
+        Translation translation = mTranslations.get(version);
+        if (translation != null) {
+            return translation;
+        }
+        SQLiteDatabase database = mPool.acquire(version);
+        if (database == null) {
+            return null;
+        }
+        String[] firstAndLast = new String[2];
+        try {
+            translation = new Translation(loadBooks(database, firstAndLast), firstAndLast);
+        } catch (SQLiteException e) {
+            LogUtils.w("cannot load books of " + version, e);
+            return null;
+        } finally {
+            mPool.release(database);
+        }
+        mTranslations.put(version, translation);
+        return translation;
+    }
+
     public static Map<String, String> loadBooks(SQLiteDatabase database, String[] firstAndLast) {
         LogUtils.d("loadBooks");
         Map<String, String> books = new LinkedHashMap<>();
@@ -104,32 +165,13 @@ public class VersionComponent {
         return books;
     }
 
-    private void loadBooks() {
-        Map<String, String> books;
-        SQLiteDatabase database = acquireDatabase();
-        String[] firstAndLast = new String[2];
-        try {
-            books = loadBooks(database, firstAndLast);
-        } finally {
-            releaseDatabase(database);
-        }
-        synchronized (mBooks) {
-            mFirstBook = firstAndLast[0];
-            mLastBook = firstAndLast[1];
-            mBooks.clear();
-            mBooks.putAll(books);
-        }
-        LogUtils.d("first: " + mFirstBook + ", last: " + mLastBook);
-        LogUtils.d("books: " + mBooks);
-        synchronized (mChapters) {
-            mChapters.clear();
-        }
-    }
-
     public List<Integer> getVerses(String book, int chapter) {
         LogUtils.d("queryVerses for " + book + "." + chapter);
         List<Integer> verses = new ArrayList<>();
         SQLiteDatabase database = acquireDatabase();
+        if (database == null) {
+            return verses;
+        }
         try (
                 Cursor cursor = database.query(VersionProvider.TABLE_VERSE, VersionProvider.COLUMNS_VERSE,
                         "book = ? and verse > ? and verse < ?",
@@ -150,6 +192,59 @@ public class VersionComponent {
         return verses;
     }
 
+    /**
+     * @return verses of the chapter in each version, queried in parallel, verse number to text
+     */
+    public List<SparseArray<String>> getParallelVerses(List<String> versions, String book, int chapter) {
+        List<Future<SparseArray<String>>> futures = new ArrayList<>();
+        for (String version : versions) {
+            futures.add(mExecutor.submit(() -> queryVerses(version, book, chapter)));
+        }
+        List<SparseArray<String>> verses = new ArrayList<>();
+        for (Future<SparseArray<String>> future : futures) {
+            try {
+                verses.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                verses.add(new SparseArray<>());
+            } catch (ExecutionException e) {
+                LogUtils.w("cannot query verses of " + book + "." + chapter, e);
+                verses.add(new SparseArray<>());
+            }
+        }
+        return verses;
+    }
+
+    private SparseArray<String> queryVerses(String version, String book, int chapter) {
+        SparseArray<String> verses = new SparseArray<>();
+        if (getTranslation(version) == null) {
+            return verses;
+        }
+        SQLiteDatabase database = mPool.acquire(version);
+        if (database == null) {
+            return verses;
+        }
+        try (
+                Cursor cursor = database.query(VersionProvider.TABLE_VERSE, new String[] {"verse", "unformatted"},
+                        "book = ? and verse > ? and verse < ?",
+                        new String[] {book, String.valueOf(chapter), String.valueOf(chapter + 1)},
+                        null, null, "id")
+        ) {
+            BigDecimal thousand = new BigDecimal(VersionProvider.THOUSAND);
+            while (cursor != null && cursor.moveToNext()) {
+                int verse = new BigDecimal(cursor.getString(0)).multiply(thousand).intValue() % VersionProvider.THOUSAND;
+                String text = cursor.getString(1);
+                String previous = verses.get(verse);
+                verses.put(verse, previous == null ? text : previous + " " + text);
+            }
+        } catch (SQLiteException e) {
+            LogUtils.w("cannot query " + book + "." + chapter + " in " + version, e);
+        } finally {
+            mPool.release(database);
+        }
+        return verses;
+    }
+
     public boolean hasChapter(String version, String osis) {
         LogUtils.d("check " + osis + " in " + version);
         File file = getFile(version);
@@ -159,19 +254,24 @@ public class VersionComponent {
             }
             return false;
         }
-        if (!file.isFile()) {
+        if (!file.isFile() || getTranslation(version) == null) {
+            return false;
+        }
+        SQLiteDatabase database = mPool.acquire(version);
+        if (database == null) {
             return false;
         }
         try (
-                SQLiteDatabase metadata = SQLiteDatabase.openDatabase(file.getAbsolutePath(), null, DATABASE_FLAGS);
-                Cursor cursor = metadata.query(VersionProvider.TABLE_CHAPTERS, new String[] {"id"},
+                Cursor cursor = database.query(VersionProvider.TABLE_CHAPTERS, new String[] {"id"},
                         "reference_osis = ? or reference_osis = ?",
                         new String[] {osis, removeIntro(osis)},
                         null, null, "id", "1")
         ) {
             return cursor != null && cursor.moveToFirst();
         } catch (SQLiteException e) {
-            LogUtils.w("cannot open " + file, e);
+            LogUtils.w("cannot query " + osis + " in " + version, e);
+        } finally {
+            mPool.release(database);
         }
         return false;
     }
@@ -182,6 +282,9 @@ public class VersionComponent {
         }
         LogUtils.d("load Annotation, osis: " + osis + ", link: " + link);
         SQLiteDatabase database = acquireDatabase();
+        if (database == null) {
+            return null;
+        }
         try (
                 Cursor cursor = database.query("annotations", new String[] {"content"}, "osis = ? and link = ?",
                         new String[] {osis, link}, null, null, null, "1")
@@ -195,6 +298,42 @@ public class VersionComponent {
         return null;
     }
 
+    /**
+     * @param osis osis, or {@code null} for the first chapter
+     * @return chapter of current version from its pack, or null if it should be queried from database
+     */
+    public Cursor queryPackedChapter(String osis) {
+        String version;
+        synchronized (databaseLock) {
+            version = mDatabaseVersion;
+        }
+        Translation translation = version == null ? null : getTranslation(version);
+        if (translation == null) {
+            return null;
+        }
+        ChapterPack pack = translation.pack;
+        if (pack == null) {
+            File file = VersionsComponent.getFile(mContext, version);
+            pack = file == null ? null : ChapterPack.open(mContext, version, file, ChapterPack.getFile(mContext, version));
+            if (pack == null) {
+                // missing or outdated, build it for later queries
+                if (file != null && !translation.packing && mContext instanceof BibleApplication) {
+                    translation.packing = true;
+                    ((BibleApplication) mContext).prepareChapters(version);
+                }
+                return null;
+            }
+            translation.pack = pack;
+        }
+        try {
+            return pack.query(osis, removeIntro(osis));
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            LogUtils.w("cannot query " + osis + " from pack of " + version, e);
+            translation.pack = null;
+            return null;
+        }
+    }
+
     public String removeIntro(String osis) {
         final String intro = "." + INTRO;
         if (!TextUtils.isEmpty(osis) && osis.endsWith(intro)) {
@@ -204,25 +343,39 @@ public class VersionComponent {
         }
     }
 
+    /**
+     * @return database of current version, should be released by {@link #releaseDatabase(SQLiteDatabase)}
+     */
     public SQLiteDatabase acquireDatabase() {
+        String version;
         synchronized (databaseLock) {
-            return mDatabase;
+            version = mDatabaseVersion;
         }
+        if (version == null) {
+            return null;
+        }
+        // keep current translation as the most recently used, so its handles aren't retired
+        getTranslation(version);
+        return mPool.acquire(version);
     }
 
     public void releaseDatabase(SQLiteDatabase database) {
-        if (oDatabase != null && oDatabase != database) {
-            LogUtils.d("close database \"" + oDatabase.getPath() + "\"");
-            oDatabase.close();
-            oDatabase = null;
-        }
+        mPool.release(database);
     }
 
     protected File getFile(String version) {
         return VersionsComponent.getFile(mContext, version);
     }
 
+    /**
+     * drop the opened translation, e.g. its pack, it's loaded again on next use
+     */
+    public void evictVersion(String version) {
+        mTranslations.remove(version);
+    }
+
     public void deleteVersion(String version) {
+        mTranslations.remove(version);
         File file = getFile(version);
         if (file != null && file.isFile()) {
             //noinspection ResultOfMethodCallIgnored
@@ -231,19 +384,19 @@ public class VersionComponent {
     }
 
     public Map<String, String> getBooks() {
-        return this.mBooks;
+        return this.mTranslation.books;
     }
 
     public String getFirstBook() {
-        return this.mFirstBook;
+        return this.mTranslation.firstBook;
     }
 
     public String getLastBook() {
-        return this.mLastBook;
+        return this.mTranslation.lastBook;
     }
 
     public String getHuman(String book) {
-        String human = this.mBooks.get(book);
+        String human = this.mTranslation.books.get(book);
         if (TextUtils.isEmpty(human)) {
             return book;
         } else {
@@ -252,19 +405,38 @@ public class VersionComponent {
     }
 
     public List<String> getChapters(String book) {
-        List<String> chapters = mChapters.get(book);
-        if (chapters == null) {
-            synchronized (mChapters) {
-                chapters = fetchChapters(book);
-                mChapters.put(book, chapters);
+        String version;
+        Translation translation;
+        synchronized (databaseLock) {
+            version = mDatabaseVersion;
+            translation = mTranslation;
+        }
+        if (version == null) {
+            return new ArrayList<>();
+        }
+        Map<String, List<String>> cached = translation.chapters;
+        synchronized (cached) {
+            List<String> chapters = cached.get(book);
+            if (chapters == null) {
+                chapters = fetchChapters(version, book);
+                if (chapters == null) {
+                    return new ArrayList<>();
+                }
+                cached.put(book, chapters);
             }
+            return chapters;
         }
-        return chapters;
     }
 
-    private List<String> fetchChapters(String book) {
-        LogUtils.d("fetchChapters for book: " + book);
-        SQLiteDatabase database = acquireDatabase();
+    /**
+     * @return chapters of the book in the version, or null if the database can't be opened
+     */
+    private List<String> fetchChapters(String version, String book) {
+        LogUtils.d("fetchChapters for book: " + book + ", version: " + version);
+        SQLiteDatabase database = mPool.acquire(version);
+        if (database == null) {
+            return null;
+        }
         List<String> chapters = new ArrayList<>();
         try (
                 Cursor cursor = database.query(VersionProvider.TABLE_CHAPTERS,
@@ -278,9 +450,34 @@ public class VersionComponent {
                     chapters.add(chapterOsis.substring(chapterIndex));
                 }
             }
+        } finally {
+            mPool.release(database);
         }
         LogUtils.d("fetchChapters for book: " + book + ", chapters: " + chapters);
         return chapters;
     }
 
+    private static class Translation {
+
+        final Map<String, String> books;
+
+        final String firstBook;
+
+        final String lastBook;
+
+        final Map<String, List<String>> chapters = new LinkedHashMap<>();
+
+        volatile ChapterPack pack;
+
+        // building of the pack is scheduled once, a failed one falls back to the database
+        volatile boolean packing;
+
+        Translation(Map<String, String> books, String[] firstAndLast) {
+            this.books = books;
+            this.firstBook = firstAndLast[0];
+            this.lastBook = firstAndLast[1];
+        }
+
+    }
+
 }
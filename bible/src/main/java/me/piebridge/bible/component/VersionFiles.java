@@ -0,0 +1,151 @@
+package me.piebridge.bible.component;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.FileObserver;
+
+import androidx.collection.ArrayMap;
+import androidx.collection.ArraySet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import me.piebridge.bible.utils.LogUtils;
+
+/**
+ * Translation databases in data dirs, as a snapshot in memory.
+ * <p>
+ * Each dir is watched by a {@link FileObserver}, the snapshot is dropped once a database is added,
+ * removed or rewritten, or the dir itself is gone, and it's built again on next read. A dir on
+ * storage mounted later isn't watched yet, so the snapshot is also dropped on media changes.
+ */
+class VersionFiles {
+
+    private static final int EVENTS = FileObserver.CREATE | FileObserver.CLOSE_WRITE
+            | FileObserver.DELETE | FileObserver.MOVED_FROM | FileObserver.MOVED_TO
+            | FileObserver.DELETE_SELF | FileObserver.MOVE_SELF;
+
+    private static final int SELF_EVENTS = FileObserver.DELETE_SELF | FileObserver.MOVE_SELF;
+
+    private final Context mContext;
+
+    private final String mSuffix;
+
+    private final List<FileObserver> mObservers = new ArrayList<>();
+
+    private List<File> mWatched = Collections.emptyList();
+
+    private List<File> mDirs;
+
+    private final ArrayMap<String, File> mFiles = new ArrayMap<>();
+
+    private volatile int mGeneration;
+
+    VersionFiles(Context context, String suffix) {
+        this.mContext = context;
+        this.mSuffix = suffix;
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_MEDIA_MOUNTED);
+        filter.addAction(Intent.ACTION_MEDIA_UNMOUNTED);
+        filter.addAction(Intent.ACTION_MEDIA_EJECT);
+        filter.addDataScheme("file");
+        context.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                LogUtils.d("[files] media: " + intent.getAction() + ", data: " + intent.getData());
+                invalidate();
+            }
+        }, filter);
+    }
+
+    /**
+     * @return data dirs, the most recently modified first
+     */
+    synchronized List<File> getDirs() {
+        ensure();
+        return mDirs;
+    }
+
+    /**
+     * @return the most recently modified database of the version, or null
+     */
+    synchronized File getFile(String version) {
+        ensure();
+        return mFiles.get(version);
+    }
+
+    synchronized Collection<String> getVersions() {
+        ensure();
+        return new ArraySet<>(mFiles.keySet());
+    }
+
+    /**
+     * @return generation of the snapshot, changed when it's dropped
+     */
+    int getGeneration() {
+        return mGeneration;
+    }
+
+    synchronized void invalidate() {
+        if (mDirs != null) {
+            mDirs = null;
+            mGeneration++;
+        }
+    }
+
+    private void ensure() {
+        if (mDirs != null) {
+            return;
+        }
+        List<File> dirs = VersionsComponent.getDirs(mContext);
+        mFiles.clear();
+        for (File dir : dirs) {
+            String[] names = dir.list();
+            if (names == null) {
+                continue;
+            }
+            for (String name : names) {
+                File file = new File(dir, name);
+                String version = VersionsComponent.getVersion(file);
+                if (version != null && file.canRead()) {
+                    File previous = mFiles.get(version);
+                    if (previous == null || VersionsComponent.compare(file, previous) < 0) {
+                        mFiles.put(version, file);
+                    }
+                }
+            }
+        }
+        if (!dirs.equals(mWatched)) {
+            watch(dirs);
+            mWatched = dirs;
+        }
+        mDirs = Collections.unmodifiableList(dirs);
+        LogUtils.d("[files] dirs: " + dirs.size() + ", versions: " + mFiles.size());
+    }
+
+    private void watch(List<File> dirs) {
+        for (FileObserver observer : mObservers) {
+            observer.stopWatching();
+        }
+        mObservers.clear();
+        for (File dir : dirs) {
+            FileObserver observer = new FileObserver(dir.getPath(), EVENTS) {
+                @Override
+                public void onEvent(int event, String path) {
+                    if ((event & SELF_EVENTS) != 0 || (path != null && path.endsWith(mSuffix))) {
+                        LogUtils.d("[files] event " + event + ", path: " + path);
+                        invalidate();
+                    }
+                }
+            };
+            observer.startWatching();
+            mObservers.add(observer);
+        }
+    }
+
+}
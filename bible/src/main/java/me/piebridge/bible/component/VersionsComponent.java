@@ -1,6 +1,7 @@
 package me.piebridge.bible.component;
 
 import android.content.Context;
+import android.content.Intent;
 import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
@@ -12,26 +13,35 @@ import androidx.collection.ArrayMap;
 import androidx.collection.ArraySet;
 import androidx.collection.SimpleArrayMap;
 import androidx.core.content.ContextCompat;
+import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Enumeration;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.zip.ZipFile;
 
+import me.piebridge.bible.BibleApplication;
 import me.piebridge.bible.OsisItem;
 import me.piebridge.bible.R;
 import me.piebridge.bible.utils.BibleUtils;
@@ -45,6 +55,20 @@ import me.piebridge.bible.utils.ObjectUtils;
  */
 public class VersionsComponent {
 
+    /**
+     * local broadcast once a version is checked, with {@link #EXTRA_VERSION}, while versions are
+     * checked in parallel, and once all are checked, without it, see {@link #isChecking()}
+     */
+    public static final String ACTION_CHECKED = "me.piebridge.bible.action.VERSION_CHECKED";
+
+    public static final String ACTION_UNPACKING = "me.piebridge.bible.action.VERSION_UNPACKING";
+
+    public static final String EXTRA_VERSION = "version";
+
+    public static final String EXTRA_PROGRESS = "progress";
+
+    private static final int MAX_CHECKERS = 0x4;
+
     private static final int DATABASE_FLAGS = SQLiteDatabase.OPEN_READONLY | SQLiteDatabase.NO_LOCALIZED_COLLATORS;
 
     private static final String PREFERENCE_VERSIONS = "versions";
@@ -57,12 +81,40 @@ public class VersionsComponent {
 
     private static final String DATABASE_SUFFIX = ".sqlite3";
 
+    private static final int SQLITE_HEADER = 0x64;
+
+    private static final String UNPACK_SUFFIX = ".unpacking";
+
+    private static final int UNPACK_BUFFER = 0x40000;
+
+    // prefix of a reference, e.g. "co 13", and of a bare name
+    private static final int MIN_PREFIX = 2;
+
+    private static final int MIN_BARE_PREFIX = 3;
+
+    private static final int MIN_DISTANCE = 5;
+
     private Context mContext;
 
     private SharedPreferences mPreferenceVersions;
     private SharedPreferences mPreferenceBooks;
 
-    private final SimpleArrayMap<String, String> mBooks;
+    private final VersionCatalog mCatalog;
+
+    private final VersionFiles mFiles;
+
+    private Collection<String> mVersions;
+
+    private int mVersionsGeneration;
+
+    // only one check at a time, later callers wait for it
+    private final Object mCheckLock = new Object();
+
+    private volatile boolean mChecking;
+
+    private final ThreadPoolExecutor mCheckers;
+
+    private final BookTrie mBooks;
 
     private boolean versionChecked;
 
@@ -75,8 +127,17 @@ public class VersionsComponent {
         mContext = context;
         mPreferenceVersions = context.getSharedPreferences(PREFERENCE_VERSIONS, Context.MODE_PRIVATE);
         mPreferenceBooks = context.getSharedPreferences(PREFERENCE_BOOKS, Context.MODE_PRIVATE);
-        mBooks = new SimpleArrayMap<>();
-
+        mCatalog = new VersionCatalog(context);
+        mFiles = new VersionFiles(context, DATABASE_SUFFIX);
+        // opening databases is mostly io, so more than one checker even on a single core
+        int checkers = Math.max(0x2, Math.min(MAX_CHECKERS, Runtime.getRuntime().availableProcessors()));
+        mCheckers = new ThreadPoolExecutor(checkers, checkers, 0x1e, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        mCheckers.allowCoreThreadTimeOut(true);
+        mBooks = new BookTrie();
+
+        removeLegacyMetadata();
+        long started = System.currentTimeMillis();
+        mCheckers.execute(() -> removeUnpacking(started));
         versionChecked = !isEmpty(mPreferenceVersions.getStringSet(KEY_VERSIONS, null));
 
         // load overrided names, fullnames
@@ -85,12 +146,12 @@ public class VersionsComponent {
 
         loadOverride();
 
-        setResourceValuesReverse(mBooks, R.array.osis);
-        setResourceValuesReverse(mBooks, R.array.human);
-        setResourceValuesReverse(mBooks, R.array.osiszhcn);
-        setResourceValuesReverse(mBooks, R.array.osiszhtw);
-        setResourceValuesReverse(mBooks, R.array.searchfullzhcn);
-        setResourceValuesReverse(mBooks, R.array.searchshortzhcn);
+        setResourceValuesReverse(R.array.osis);
+        setResourceValuesReverse(R.array.human);
+        setResourceValuesReverse(R.array.osiszhcn);
+        setResourceValuesReverse(R.array.osiszhtw);
+        setResourceValuesReverse(R.array.searchfullzhcn);
+        setResourceValuesReverse(R.array.searchshortzhcn);
 
         Map<String, Object> books = new ArrayMap<>();
         books.putAll(mPreferenceBooks.getAll());
@@ -106,11 +167,29 @@ public class VersionsComponent {
         }
     }
 
+    /**
+     * metadata of versions was in preferences as {@code <version>_<name>}, now it's in catalog
+     */
+    private void removeLegacyMetadata() {
+        Set<String> keys = new ArraySet<>(mPreferenceVersions.getAll().keySet());
+        keys.remove(KEY_VERSIONS);
+        keys.remove(KEY_VERSION);
+        if (!keys.isEmpty()) {
+            SharedPreferences.Editor editor = mPreferenceVersions.edit();
+            for (String key : keys) {
+                editor.remove(key);
+            }
+            // versions would be checked again to fill the catalog
+            editor.remove(KEY_VERSIONS);
+            editor.apply();
+        }
+    }
+
     private boolean isEmpty(Set<String> set) {
         return set == null || set.isEmpty();
     }
 
-    private void loadOverride() {
+    private synchronized void loadOverride() {
         Locale locale = LocaleUtils.getOverrideLocale(mContext);
         if (!ObjectUtils.equals(mLocale, locale)) {
             mLocale = locale;
@@ -129,7 +208,7 @@ public class VersionsComponent {
         }
     }
 
-    private void setResourceValuesReverse(SimpleArrayMap<String, String> map, int resId) {
+    private void setResourceValuesReverse(int resId) {
         for (String entry : mContext.getResources().getStringArray(resId)) {
             int index = entry.indexOf('|');
             String key = entry.substring(0, index);
@@ -152,27 +231,53 @@ public class VersionsComponent {
         mPreferenceVersions.edit().putString(KEY_VERSION, version).apply();
     }
 
+    /**
+     * @return versions, kept until files in data dirs are changed
+     */
     public Collection<String> getVersions() {
-        List<File> dirs = getDirs(mContext);
-        if (dirs.isEmpty()) {
-            LogUtils.w("no dirs, use demo versions");
-            return checkDemoVersions();
+        int generation = mFiles.getGeneration();
+        synchronized (mFiles) {
+            if (mVersions != null && mVersionsGeneration == generation) {
+                return mVersions;
+            }
         }
-        final String key = KEY_VERSIONS + "_mtime";
-        long mtime = mPreferenceVersions.getLong(key, 0);
-        long lastModified = dirs.get(0).lastModified();
-        if (mtime == lastModified) {
-            Set<String> versions = mPreferenceVersions.getStringSet(KEY_VERSIONS, null);
-            if (versions != null && !versions.isEmpty()) {
-                LogUtils.d("[cache] versions: " + versions.size());
-                return new ArraySet<>(versions);
+        synchronized (mCheckLock) {
+            synchronized (mFiles) {
+                if (mVersions != null && mVersionsGeneration == generation) {
+                    return mVersions;
+                }
+            }
+            Collection<String> versions;
+            mChecking = true;
+            try {
+                versions = Collections.unmodifiableCollection(loadVersions());
+                synchronized (mFiles) {
+                    mVersions = versions;
+                    mVersionsGeneration = generation;
+                }
+            } finally {
+                mChecking = false;
             }
+            LocalBroadcastManager.getInstance(mContext).sendBroadcast(new Intent(ACTION_CHECKED));
+            return versions;
         }
-        try {
-            return checkVersions();
-        } finally {
-            mPreferenceVersions.edit().putLong(key, lastModified).apply();
+    }
+
+    /**
+     * @return whether versions are being checked, {@link #ACTION_CHECKED} is sent once they are checked
+     */
+    public boolean isChecking() {
+        return mChecking;
+    }
+
+    private Collection<String> loadVersions() {
+        List<File> dirs = mFiles.getDirs();
+        if (dirs.isEmpty()) {
+            LogUtils.w("no dirs, use demo versions");
+            return checkDemoVersions();
         }
+        // fingerprints are cheap, databases are opened only if they are changed
+        return checkVersions();
     }
 
     public static String getVersion(File file) {
@@ -212,12 +317,14 @@ public class VersionsComponent {
     public static File getFile(Context context, String version) {
         if (BibleUtils.isDemoVersion(version)) {
             return new File(context.getFilesDir(), version + DATABASE_SUFFIX);
+        } else if (context instanceof BibleApplication) {
+            return ((BibleApplication) context).getFile(version);
         } else {
             return getFile(getDirs(context), version);
         }
     }
 
-    public static File getFile(List<File> dirs, String version) {
+    private static File getFile(List<File> dirs, String version) {
         List<File> files = new ArrayList<>();
         String name = version + DATABASE_SUFFIX;
         for (File dir : dirs) {
@@ -229,67 +336,59 @@ public class VersionsComponent {
         if (files.isEmpty()) {
             return null;
         }
-        if (files.size() == 1) {
-            return files.get(0);
-        }
         Collections.sort(files, VersionsComponent::compare);
-        for (File file : files) {
-            LogUtils.d("version: " + version + ", multi file: " + file);
-        }
         return files.get(0);
     }
 
-    private Collection<String> checkVersionFiles(List<File> dirs) {
-        Set<String> versions = new ArraySet<>();
-        for (File dir : dirs) {
-            String[] names = dir.list();
-            if (names != null) {
-                for (String name : names) {
-                    String version = getVersion(new File(dir, name));
-                    if (!TextUtils.isEmpty(version)) {
-                        versions.add(version);
-                    }
-                }
-            }
+    /**
+     * @return the most recently modified database of the version, or null
+     */
+    public File getFile(String version) {
+        if (BibleUtils.isDemoVersion(version)) {
+            return getFile(mContext, version);
+        } else {
+            return mFiles.getFile(version);
         }
-        return versions;
     }
 
     public Collection<String> checkVersions() {
-        List<File> dirs = getDirs(mContext);
-        LogUtils.d("dirs: " + dirs);
-        Collection<String> candidate = checkVersionFiles(dirs);
+        LogUtils.d("dirs: " + mFiles.getDirs());
+        Collection<String> candidate = mFiles.getVersions();
         LogUtils.d("candidate: " + candidate);
 
         Set<String> versions = new ArraySet<>();
+        List<Future<String>> futures = new ArrayList<>();
         for (String version : candidate) {
-            File file = getFile(dirs, version);
+            File file = mFiles.getFile(version);
             if (file != null) {
-                String key = version + "_mtime";
-                if (versionChecked && mPreferenceVersions.getLong(key, 0) == file.lastModified()) {
+                String fingerprint = versionChecked ? getFingerprint(file) : null;
+                if (fingerprint != null && fingerprint.equals(mCatalog.getFingerprint(version))) {
+                    mCatalog.setMtime(version, file.lastModified());
                     versions.add(version);
                     LogUtils.d("[cache] " + file + ": " + getFullname(version));
                 } else {
-                    synchronized (version.intern()) {
-                        if (checkVersion(file, version)) {
-                            mPreferenceVersions.edit().putLong(key, file.lastModified()).apply();
-                            versions.add(version);
-                            LogUtils.d("[check] " + file + ": " + getFullname(version));
-                        } else {
-                            LogUtils.d("[check] " + file + " is not bible data");
-                            //noinspection ResultOfMethodCallIgnored
-                            file.delete();
-                        }
-                    }
+                    futures.add(mCheckers.submit(() -> checkFile(file, version)));
+                }
+            }
+        }
+        for (Future<String> future : futures) {
+            try {
+                String version = future.get();
+                if (version != null) {
+                    versions.add(version);
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                LogUtils.w("cannot check version", e);
             }
         }
         if (!versionChecked) {
             versionChecked = true;
         }
         checkUpdated(versions);
-        mPreferenceVersions.edit().putStringSet(KEY_VERSIONS, versions).apply();
         Set<String> oldVersions = mPreferenceVersions.getStringSet(KEY_VERSIONS, null);
+        mPreferenceVersions.edit().putStringSet(KEY_VERSIONS, versions).apply();
         if (oldVersions != null) {
             Set<String> removedVersions = new ArraySet<>(oldVersions);
             removedVersions.removeAll(versions);
@@ -307,6 +406,27 @@ public class VersionsComponent {
         }
     }
 
+    /**
+     * @return version if the file is bible data, or null and the file is deleted
+     */
+    private String checkFile(File file, String version) {
+        synchronized (version.intern()) {
+            if (checkVersion(file, version)) {
+                LogUtils.d("[check] " + file + ": " + getFullname(version));
+                Intent intent = new Intent(ACTION_CHECKED);
+                intent.putExtra(EXTRA_VERSION, version);
+                LocalBroadcastManager.getInstance(mContext).sendBroadcast(intent);
+                return version;
+            } else {
+                LogUtils.d("[check] " + file + " is not bible data");
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+                mFiles.invalidate();
+                return null;
+            }
+        }
+    }
+
     private void checkUpdated(Set<String> versions) {
         checkUpdated(versions, "cunpss", "cu89s");
         checkUpdated(versions, "cunpts", "cu89t");
@@ -320,18 +440,7 @@ public class VersionsComponent {
     }
 
     private void removeMetadata(String version) {
-        Set<String> keys = new ArraySet<>();
-        String prefix = version + "_";
-        for (String key : mPreferenceVersions.getAll().keySet()) {
-            if (key.startsWith(prefix)) {
-                keys.add(key);
-            }
-        }
-        SharedPreferences.Editor editor = mPreferenceVersions.edit();
-        for (String key : keys) {
-            editor.remove(key);
-        }
-        editor.apply();
+        mCatalog.remove(version);
     }
 
     private Collection<String> checkDemoVersions() {
@@ -378,33 +487,12 @@ public class VersionsComponent {
     }
 
     public String getDate(String version) {
-        return mPreferenceVersions.getString(version + "_date", null);
+        return mCatalog.get(version, "date", null);
     }
 
     private String getMetadata(String version, String name, String defaultValue) {
-        Locale locale = LocaleUtils.getOverrideLocale(mContext);
-        String key = version + "_" + name;
-        String keyLanguage = key + "_" + locale.getLanguage();
-        String keyCountry = keyLanguage + "_" + locale.getCountry();
-
-        String value;
-
-        value = mPreferenceVersions.getString(keyCountry, null);
-        if (!TextUtils.isEmpty(value)) {
-            return value;
-        }
-
-        value = mPreferenceVersions.getString(keyLanguage, null);
-        if (!TextUtils.isEmpty(value)) {
-            return value;
-        }
-
-        value = mPreferenceVersions.getString(key, null);
-        if (!TextUtils.isEmpty(value)) {
-            return value;
-        }
-
-        return defaultValue;
+        String value = mCatalog.get(version, name, LocaleUtils.getOverrideLocale(mContext));
+        return value == null ? defaultValue : value;
     }
 
     private boolean checkVersion(File file, String version) {
@@ -412,8 +500,17 @@ public class VersionsComponent {
                 SQLiteDatabase database = SQLiteDatabase.openDatabase(file.getAbsolutePath(), null, DATABASE_FLAGS)
         ) {
             if (isDatabaseSupported(database)) {
-                checkMetadata(version, database);
+                String previous = mCatalog.getFingerprint(version);
+                String fingerprint = getFingerprint(file);
+                mCatalog.put(version, file.lastModified(), fingerprint, loadMetadata(database));
                 updateBooks(VersionComponent.loadBooks(database, null));
+                if (mContext instanceof BibleApplication) {
+                    BibleApplication application = (BibleApplication) mContext;
+                    if (previous != null && !previous.equals(fingerprint)) {
+                        application.evictVersion(version);
+                    }
+                    application.prepareChapters(version);
+                }
                 return true;
             }
         } catch (SQLiteException | IllegalStateException e) {
@@ -422,6 +519,77 @@ public class VersionsComponent {
         return false;
     }
 
+    /**
+     * @return size, crc32 of the first page, schema cookie and user version of the database, or null
+     */
+    static String getFingerprint(File file) {
+        try (
+                RandomAccessFile raf = new RandomAccessFile(file, "r")
+        ) {
+            long size = raf.length();
+            byte[] header = new byte[SQLITE_HEADER];
+            if (size < header.length) {
+                return null;
+            }
+            raf.readFully(header);
+            // page size is 1 for 65536
+            int pageSize = ((header[0x10] & 0xff) << 0x8) | (header[0x11] & 0xff);
+            if (pageSize == 0x1) {
+                pageSize = 0x10000;
+            }
+            byte[] page = new byte[(int) Math.min(Math.max(pageSize, header.length), size)];
+            raf.seek(0);
+            raf.readFully(page);
+            CRC32 crc = new CRC32();
+            crc.update(page);
+            return size + ":" + Long.toHexString(crc.getValue())
+                    + ":" + getInt(header, 0x28) + ":" + getInt(header, 0x3c);
+        } catch (IOException e) {
+            LogUtils.w("cannot read " + file, e);
+            return null;
+        }
+    }
+
+    private static int getInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xff) << 0x18) | ((bytes[offset + 0x1] & 0xff) << 0x10)
+                | ((bytes[offset + 0x2] & 0xff) << 0x8) | (bytes[offset + 0x3] & 0xff);
+    }
+
+    /**
+     * @return when content of the database was changed, as checked by fingerprint
+     */
+    public long getChanged(String version, File file) {
+        return mCatalog.getChanged(version, file.lastModified());
+    }
+
+    /**
+     * @return file built from the database, next to it if writable, or in the cache
+     */
+    public static File getDerivedFile(Context context, File file, String name) {
+        File dir = file.getParentFile();
+        if (dir == null || !dir.canWrite()) {
+            dir = context.getCacheDir();
+        }
+        return new File(dir, name);
+    }
+
+    /**
+     * @param derived file built from the database, e.g. fixed chapters, pack, index
+     * @return whether the derived file is as new as content of the database
+     */
+    public static boolean isUpToDate(Context context, String version, File file, File derived) {
+        if (!derived.isFile()) {
+            return false;
+        }
+        long changed;
+        if (context instanceof BibleApplication) {
+            changed = ((BibleApplication) context).getChanged(version, file);
+        } else {
+            changed = file.lastModified();
+        }
+        return derived.lastModified() >= changed;
+    }
+
     private boolean isDatabaseSupported(SQLiteDatabase database) {
         return hasColumns(database, "verses", "id", "book", "verse", "unformatted")
                 && hasColumns(database, "books", "number", "osis", "human", "chapters")
@@ -447,23 +615,20 @@ public class VersionsComponent {
         }
     }
 
-    private void checkMetadata(String version, SQLiteDatabase metadata) {
+    private static SimpleArrayMap<String, String> loadMetadata(SQLiteDatabase database) {
+        SimpleArrayMap<String, String> metadata = new SimpleArrayMap<>();
         try (
-                Cursor cursor = metadata.query("metadata", null, null, null, null, null, null)
+                Cursor cursor = database.query("metadata", null, null, null, null, null, null)
         ) {
             if (cursor != null) {
                 int nameIndex = cursor.getColumnIndex("name");
                 int valueIndex = cursor.getColumnIndex("value");
-                SharedPreferences.Editor editor = mPreferenceVersions.edit();
                 while (cursor.moveToNext()) {
-                    String name = cursor.getString(nameIndex);
-                    String value = cursor.getString(valueIndex);
-                    String key = version + "_" + name;
-                    editor.putString(key, value);
+                    metadata.put(cursor.getString(nameIndex), cursor.getString(valueIndex));
                 }
-                editor.apply();
             }
         }
+        return metadata;
     }
 
     private boolean checkDemoVersion(int resId, String version) {
@@ -499,45 +664,116 @@ public class VersionsComponent {
         return false;
     }
 
-    public boolean unpackZip(File path, String version) throws IOException {
-        long fileSize = path.length();
+    /**
+     * @param listener listener for progress, called on the calling thread, may be null
+     */
+    public boolean unpackZip(File path, String version, OnUnpackListener listener) throws IOException {
         boolean unpacked = false;
+        String name = version + DATABASE_SUFFIX;
         try (
-                ZipInputStream zis = new ZipInputStream(new BufferedInputStream(new FileInputStream(path)))
+                ZipFile zip = new ZipFile(path)
         ) {
-            ZipEntry ze;
-            String name = version + DATABASE_SUFFIX;
-            while ((ze = zis.getNextEntry()) != null) {
-                long zeSize = ze.getCompressedSize();
-                if (fileSize >= zeSize && name.equalsIgnoreCase(ze.getName())) {
-                    File file = new File(mContext.getExternalFilesDir(null), name);
-                    if (!file.exists() || file.lastModified() <= path.lastModified()) {
-                        LogUtils.d("unpacking " + file.getAbsoluteFile());
-                        unpacked = unpack(zis, file);
+            ZipEntry entry = getEntry(zip, name);
+            if (entry != null) {
+                File file = new File(mContext.getExternalFilesDir(null), name);
+                if (!file.exists() || file.lastModified() <= path.lastModified()) {
+                    LogUtils.d("unpacking " + file.getAbsoluteFile());
+                    try (
+                            InputStream is = zip.getInputStream(entry)
+                    ) {
+                        unpacked = unpack(is, entry, file, version, listener);
                     }
                 }
-                zis.closeEntry();
             }
         }
         if (unpacked) {
             //noinspection ResultOfMethodCallIgnored
             path.delete();
+            // don't wait for the observer
+            mFiles.invalidate();
         }
         return unpacked;
     }
 
-    private boolean unpack(InputStream is, File file) throws IOException {
-        File tempFile = File.createTempFile(file.getName(), null, file.getParentFile());
-        try (
-                OutputStream os = new BufferedOutputStream(new FileOutputStream(tempFile))
-        ) {
-            FileUtils.copy(is, os);
+    private static ZipEntry getEntry(ZipFile zip, String name) {
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (name.equalsIgnoreCase(entry.getName())) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * unpack via a temp file, it's renamed only if size and crc match the entry, and it's synced
+     */
+    private boolean unpack(InputStream is, ZipEntry entry, File file, String version,
+                           OnUnpackListener listener) throws IOException {
+        File tempFile = File.createTempFile(file.getName(), UNPACK_SUFFIX, file.getParentFile());
+        try {
+            long total = entry.getSize();
+            long size = 0;
+            int progress = -1;
+            CRC32 crc = new CRC32();
+            // inflater works on arrays, so a large array instead of direct buffers
+            byte[] buffer = new byte[UNPACK_BUFFER];
+            try (
+                    FileOutputStream os = new FileOutputStream(tempFile)
+            ) {
+                int length;
+                while ((length = is.read(buffer)) != -1) {
+                    os.write(buffer, 0, length);
+                    crc.update(buffer, 0, length);
+                    size += length;
+                    if (listener != null && total > 0) {
+                        int current = (int) (size * 0x64 / total);
+                        if (current != progress) {
+                            progress = current;
+                            listener.onUnpack(version, progress);
+                        }
+                    }
+                }
+                if ((total >= 0 && size != total) || (entry.getCrc() >= 0 && crc.getValue() != entry.getCrc())) {
+                    LogUtils.w("corrupted " + entry.getName() + ", size: " + size + ", crc: "
+                            + Long.toHexString(crc.getValue()));
+                    return false;
+                }
+                os.getFD().sync();
+            }
+            return tempFile.renameTo(file);
+        } finally {
+            if (tempFile.exists()) {
+                //noinspection ResultOfMethodCallIgnored
+                tempFile.delete();
+            }
+        }
+    }
+
+    /**
+     * remove temp files left by unpacking in a previous process
+     */
+    private void removeUnpacking(long before) {
+        File dir = mContext.getExternalFilesDir(null);
+        File[] files = dir == null ? null : dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (file.lastModified() < before && name.contains(DATABASE_SUFFIX)
+                    && (name.endsWith(UNPACK_SUFFIX) || name.endsWith(".tmp"))) {
+                LogUtils.d("remove " + file);
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
         }
-        return tempFile.renameTo(file);
     }
 
 
     public void deleteVersion(String version) {
+        mFiles.invalidate();
         Set<String> versions = mPreferenceVersions.getStringSet(KEY_VERSIONS, null);
         if (versions != null) {
             Set<String> oldVersions = new ArraySet<>(versions);
@@ -547,7 +783,7 @@ public class VersionsComponent {
         removeMetadata(version);
     }
 
-    public void updateBooks(Map<String, String> books) {
+    public synchronized void updateBooks(Map<String, String> books) {
         SharedPreferences.Editor editor = mPreferenceBooks.edit();
         for (Map.Entry<String, String> entry : books.entrySet()) {
             String book = entry.getKey();
@@ -580,8 +816,52 @@ public class VersionsComponent {
         }
     }
 
-    public String getOsis(String query) {
-        return mBooks.get(OsisItem.fixOsis(query));
+    /**
+     * @param loose whether the name is followed by chapter, words such as "he" or "truth" are
+     *              names only with chapter, e.g. "he 11"
+     * @return osis of the name, or, if it's loose, of the only book starting with it, or of the
+     * only book in one edit
+     */
+    public String getOsis(String query, boolean loose) {
+        String name = OsisItem.fixOsis(query);
+        String osis = mBooks.get(name);
+        if (loose) {
+            osis = getOsisLoosely(name, osis, MIN_PREFIX);
+        }
+        return osis;
+    }
+
+    private String getOsisLoosely(String name, String osis, int minPrefix) {
+        if (osis == null && name.length() >= minPrefix) {
+            osis = mBooks.getByPrefix(name);
+        }
+        if (osis == null && name.length() >= MIN_DISTANCE) {
+            osis = mBooks.getByDistance(name);
+        }
+        return osis;
+    }
+
+    /**
+     * @return osis of books which has the query in its name, or which the query resolves to,
+     * loosely as {@link #getOsis(String, boolean)}, but a prefix has three chars at least
+     */
+    public Set<String> searchBooks(String query) {
+        String name = OsisItem.fixOsis(query);
+        Set<String> books = mBooks.getByText(name);
+        String osis = getOsisLoosely(name, mBooks.get(name), MIN_BARE_PREFIX);
+        if (osis != null) {
+            books.add(osis);
+        }
+        return books;
+    }
+
+    public interface OnUnpackListener {
+
+        /**
+         * @param progress unpacked percent, 0 to 100
+         */
+        void onUnpack(String version, int progress);
+
     }
 
 }
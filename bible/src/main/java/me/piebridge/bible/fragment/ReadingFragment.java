@@ -87,6 +87,10 @@ public class ReadingFragment extends Fragment {
 
     private String initialSelected;
 
+    private long contentId;
+
+    private long reloadingId;
+
     public ReadingFragment() {
         setArguments(new Bundle());
     }
@@ -111,6 +115,10 @@ public class ReadingFragment extends Fragment {
     public void onActivityCreated(Bundle savedInstanceState) {
         super.onActivityCreated(savedInstanceState);
         Bundle bundle = getArguments();
+        if (bundle != null && bundle.containsKey(CONTENT) && getContent(bundle) == null) {
+            // content is gone with the previous process, wait for the retrieved one
+            bundle.remove(CONTENT);
+        }
         if (savedInstanceState != null) {
             verse = savedInstanceState.getInt(VERSE);
             selectedVerses = savedInstanceState.getString(SELECTED_VERSES);
@@ -159,8 +167,9 @@ public class ReadingFragment extends Fragment {
         }
         webView.loadUrl("about:blank");
         Bundle bundle = ObjectUtils.requireNonNull(getArguments());
-        if (bundle.isEmpty() || bundle.getByteArray(CONTENT) == null) {
+        if (bundle.isEmpty() || !acquireContent(bundle)) {
             LogUtils.w("bundle is null");
+            reloadContent(bundle);
             return false;
         }
         String currentOsis = bundle.getString(CURR);
@@ -191,8 +200,52 @@ public class ReadingFragment extends Fragment {
 
     public String getBody() {
         Bundle bundle = ObjectUtils.requireNonNull(getArguments());
-        String content = FileUtils.uncompressAsString(bundle.getByteArray(CONTENT));
-        return getBody(getTitle(), content);
+        String content = getContent(bundle);
+        return getBody(getTitle(), content == null ? "" : content);
+    }
+
+    private String getContent(Bundle bundle) {
+        BibleApplication application = getApplication();
+        return application == null ? null : application.getContent(bundle.getLong(CONTENT));
+    }
+
+    private boolean acquireContent(Bundle bundle) {
+        if (!bundle.containsKey(CONTENT)) {
+            return false;
+        }
+        long id = bundle.getLong(CONTENT);
+        if (id == contentId) {
+            return true;
+        }
+        BibleApplication application = getApplication();
+        if (application == null || !application.acquireContent(id)) {
+            return false;
+        }
+        releaseContent();
+        contentId = id;
+        return true;
+    }
+
+    private void reloadContent(Bundle bundle) {
+        // the content is gone, retrieve it once for each id, a new id is reloaded by putAll
+        long id = bundle.getLong(CONTENT);
+        if (id != 0 && id != reloadingId && getActivity() instanceof AbstractReadingActivity) {
+            reloadingId = id;
+            ((AbstractReadingActivity) getActivity()).reloadContent(bundle.getInt(POSITION));
+        }
+    }
+
+    private void releaseContent() {
+        BibleApplication application = getApplication();
+        if (contentId != 0 && application != null) {
+            application.releaseContent(contentId);
+            contentId = 0;
+        }
+    }
+
+    private BibleApplication getApplication() {
+        Activity activity = getActivity();
+        return activity == null ? null : (BibleApplication) activity.getApplication();
     }
 
     public String getTitle() {
@@ -317,6 +370,12 @@ public class ReadingFragment extends Fragment {
         return css.toString();
     }
 
+    @Override
+    public void onDestroy() {
+        releaseContent();
+        super.onDestroy();
+    }
+
     @Override
     public void onSaveInstanceState(Bundle outState) {
         outState.putInt(VERSE, readingBridge.getVerse(webView, currentPos()));
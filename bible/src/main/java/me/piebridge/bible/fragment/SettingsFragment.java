@@ -4,10 +4,16 @@ import android.os.Build;
 import android.os.Bundle;
 import android.text.TextUtils;
 
+import androidx.preference.MultiSelectListPreference;
 import androidx.preference.Preference;
 import androidx.preference.PreferenceFragmentCompat;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import me.piebridge.bible.BibleApplication;
 import me.piebridge.bible.R;
+import me.piebridge.bible.activity.AbstractReadingActivity;
 import me.piebridge.bible.activity.SettingsActivity;
 import me.piebridge.bible.utils.LocaleUtils;
 import me.piebridge.bible.utils.NumberUtils;
@@ -49,11 +55,29 @@ public class SettingsFragment extends PreferenceFragmentCompat
             fontsizeVersionPreference.setSummary(Integer.toString(versionFontsizeValue));
         }
 
+        updateParallel(activity);
+
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) { // odb requires https in webview, since 4.4
             removePreferences(findPreference("odb"));
         }
     }
 
+    private void updateParallel(SettingsActivity activity) {
+        MultiSelectListPreference parallel = (MultiSelectListPreference) findPreference(AbstractReadingActivity.PARALLEL);
+        BibleApplication application = (BibleApplication) activity.getApplication();
+        List<String> versions = new ArrayList<>(application.getSortedVersions());
+        if (versions.size() < 2) {
+            removePreferences(parallel);
+            return;
+        }
+        List<String> names = new ArrayList<>();
+        for (String version : versions) {
+            names.add(application.getFullname(version));
+        }
+        parallel.setEntries(names.toArray(new String[0]));
+        parallel.setEntryValues(versions.toArray(new String[0]));
+    }
+
     private void removePreferences(Preference... preferences) {
         for (Preference preference : preferences) {
             if (preference != null) {
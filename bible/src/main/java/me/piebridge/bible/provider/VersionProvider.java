@@ -5,15 +5,22 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.MergeCursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
 import android.net.Uri;
 import android.text.TextUtils;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 
 import me.piebridge.bible.BibleApplication;
+import me.piebridge.bible.component.LeasedCursor;
 import me.piebridge.bible.utils.LogUtils;
+import me.piebridge.bible.utils.NumberUtils;
 
 public class VersionProvider extends ContentProvider {
 
@@ -28,9 +35,11 @@ public class VersionProvider extends ContentProvider {
     public static final String COLUMN_CONTENT = "content";
     public static final String COLUMN_OSIS = "osis";
     public static final String COLUMN_CHAPTERS = "chapters";
+    public static final String COLUMN_COUNT = "_count";
 
     public static final String TABLE_VERSES = "verses left outer join books on (verses.book = books.osis)";
     public static final String[] COLUMNS_VERSES = {"id as _id", "book", "human", "verse", "unformatted"};
+    public static final String[] COLUMNS_VERSES_COUNT = {"count(id) as _count"};
 
     public static final String TABLE_VERSE = "verses";
     public static final String[] COLUMNS_VERSE = {"verse"};
@@ -51,12 +60,19 @@ public class VersionProvider extends ContentProvider {
     public static final Uri CONTENT_URI_CHAPTER = Uri.parse("content://" + AUTHORITY + "/chapter");
     public static final Uri CONTENT_URI_CHAPTERS = Uri.parse("content://" + AUTHORITY + "/chapters");
 
+    public static final String QUERY_BOOKS = "books";
+    public static final String QUERY_AFTER = "after";
+    public static final String QUERY_LIMIT = "limit";
+    public static final String QUERY_COUNT = "count";
+
     private static final int URI_SEARCH = 0;
     private static final int URI_VERSE = 1;
     private static final int URI_CHAPTER = 2;
     private static final int URI_CHAPTERS = 3;
     private static final int URI_BOOK = 4;
 
+    private static final int MAX_SLICE = 0x200;
+
     private BibleApplication application;
 
     private final UriMatcher uriMatcher = buildUriMatcher();
@@ -72,6 +88,11 @@ public class VersionProvider extends ContentProvider {
     }
 
     private Cursor queryBook(String query, String books) {
+        Set<String> osis = application.searchBooks(query);
+        if (osis.isEmpty()) {
+            return null;
+        }
+
         SQLiteDatabase database = application.acquireDatabase();
         if (database == null) {
             return null;
@@ -80,62 +101,174 @@ public class VersionProvider extends ContentProvider {
         Cursor cursor = null;
         try {
             StringBuilder selection = new StringBuilder();
-            selection.append("(");
-            selection.append("human like ?");
-            String osis = application.getOsis(query);
-            if (!TextUtils.isEmpty(osis)) {
-                selection.append(" or osis = '");
-                selection.append(osis);
+            selection.append("osis in (");
+            boolean first = true;
+            for (String book : osis) {
+                if (!first) {
+                    selection.append(", ");
+                }
+                first = false;
+                selection.append("'");
+                selection.append(book);
                 selection.append("'");
             }
-            selection.append(") ");
+            selection.append(")");
             if (!TextUtils.isEmpty(books)) {
-                selection.append("and osis in (");
+                selection.append(" and osis in (");
                 selection.append(books);
                 selection.append(")");
             }
             cursor = database.query(TABLE_BOOKS, COLUMNS_BOOKS,
-                    selection.toString(),
-                    new String[] {"%" + query + "%"}, null, null, "number ASC");
+                    selection.toString(), null, null, null, "number ASC");
         } catch (SQLiteException e) {
             LogUtils.w("cannot search " + query, e);
-        } finally {
-            application.releaseDatabase(database);
         }
 
-        if (cursor == null) {
-            return null;
-        } else if (!cursor.moveToFirst()) {
+        return lease(database, cursor);
+    }
+
+    private Cursor queryVerse(String query, String books, long after, int limit, boolean count) {
+        // the index finds the same verses as like, an empty result is final
+        Cursor cursor = application.searchVerse(query, books, after, limit, count);
+        if (cursor != null) {
+            if (cursor.moveToFirst()) {
+                return cursor;
+            }
             cursor.close();
             return null;
         }
 
-        return cursor;
-    }
+        int[] ids = application.searchVerseIds(query);
+        if (ids != null && ids.length == 0) {
+            return null;
+        }
 
-    private Cursor queryVerse(String query, String books) {
         SQLiteDatabase database = application.acquireDatabase();
         if (database == null) {
             return null;
         }
 
-        Cursor cursor;
+        StringBuilder selection = new StringBuilder();
+        selection.append("unformatted like ?");
+        if (after > 0) {
+            selection.append(" and id > ");
+            selection.append(after);
+        }
+        if (!TextUtils.isEmpty(books)) {
+            selection.append(" and book in (");
+            selection.append(books);
+            selection.append(")");
+        }
+        String[] selectionArgs = {"%" + query + "%"};
+        if (ids != null) {
+            return queryVerseIds(database, ids, selection.toString(), selectionArgs, after, limit, count);
+        }
         try {
-            cursor = database.query(TABLE_VERSES, COLUMNS_VERSES,
-                    TextUtils.isEmpty(books) ? "unformatted like ?" : "unformatted like ? and book in (" + books + ")",
-                    new String[] {"%" + query + "%"}, null, null, "id ASC");
-        } finally {
+            cursor = database.query(TABLE_VERSES, count ? COLUMNS_VERSES_COUNT : COLUMNS_VERSES, selection.toString(),
+                    selectionArgs, null, null,
+                    count ? null : "id ASC", limit > 0 ? String.valueOf(limit) : null);
+        } catch (RuntimeException e) {
+            application.releaseDatabase(database);
+            throw e;
+        }
+
+        return lease(database, cursor);
+    }
+
+    /**
+     * candidate ids are sorted, so only slices after {@code after} are inlined into
+     * {@code id in (...)}, one by one until the limit is filled
+     */
+    private Cursor queryVerseIds(SQLiteDatabase database, int[] ids, String selection, String[] selectionArgs,
+                                 long after, int limit, boolean count) {
+        List<Cursor> cursors = new ArrayList<>();
+        int rows = 0;
+        try {
+            for (int start = firstAfter(ids, after); start < ids.length
+                    && (count || limit <= 0 || rows < limit); start += MAX_SLICE) {
+                StringBuilder sliced = new StringBuilder(selection);
+                sliced.append(" and id in (");
+                int end = Math.min(ids.length, start + MAX_SLICE);
+                for (int i = start; i < end; ++i) {
+                    if (i > start) {
+                        sliced.append(",");
+                    }
+                    sliced.append(ids[i]);
+                }
+                sliced.append(")");
+                Cursor cursor = database.query(TABLE_VERSES, count ? COLUMNS_VERSES_COUNT : COLUMNS_VERSES,
+                        sliced.toString(), selectionArgs, null, null, count ? null : "id ASC",
+                        count || limit <= 0 ? null : String.valueOf(limit - rows));
+                if (cursor == null) {
+                    continue;
+                }
+                if (count) {
+                    if (cursor.moveToFirst()) {
+                        rows += cursor.getInt(0);
+                    }
+                    cursor.close();
+                } else if (cursor.getCount() > 0) {
+                    rows += cursor.getCount();
+                    cursors.add(cursor);
+                } else {
+                    cursor.close();
+                }
+            }
+        } catch (RuntimeException e) {
+            for (Cursor cursor : cursors) {
+                cursor.close();
+            }
             application.releaseDatabase(database);
+            throw e;
         }
 
+        if (count) {
+            application.releaseDatabase(database);
+            MatrixCursor cursor = new MatrixCursor(new String[] {COLUMN_COUNT});
+            cursor.addRow(new Object[] {rows});
+            cursor.moveToFirst();
+            return cursor;
+        } else if (cursors.isEmpty()) {
+            application.releaseDatabase(database);
+            return null;
+        } else if (cursors.size() == 1) {
+            return lease(database, cursors.get(0));
+        } else {
+            return lease(database, new MergeCursor(cursors.toArray(new Cursor[0])));
+        }
+    }
+
+    /**
+     * @return index of the first id greater than {@code after}
+     */
+    private static int firstAfter(int[] ids, long after) {
+        int low = 0;
+        int high = ids.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ids[mid] <= after) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return cursor moved to first, holding the lease of database until it's closed, or null
+     */
+    private Cursor lease(SQLiteDatabase database, Cursor cursor) {
         if (cursor == null) {
+            application.releaseDatabase(database);
             return null;
-        } else if (!cursor.moveToFirst()) {
-            cursor.close();
+        }
+        Cursor leased = new LeasedCursor(cursor, () -> application.releaseDatabase(database));
+        if (!leased.moveToFirst()) {
+            leased.close();
             return null;
         }
-
-        return cursor;
+        return leased;
     }
 
     private Cursor getVerse(String id) {
@@ -148,21 +281,23 @@ public class VersionProvider extends ContentProvider {
         try {
             cursor = database.query(TABLE_VERSES, COLUMNS_VERSES,
                     "_id = ?", new String[] {id}, null, null, null);
-        } finally {
+        } catch (RuntimeException e) {
             application.releaseDatabase(database);
+            throw e;
         }
 
-        if (cursor == null) {
-            return null;
-        } else if (!cursor.moveToFirst()) {
-            cursor.close();
-            return null;
-        }
-
-        return cursor;
+        return lease(database, cursor);
     }
 
     private Cursor getChapter(String osis) {
+        Cursor packed = application.queryPackedChapter(osis.equals("null") ? null : osis);
+        if (packed != null) {
+            if (packed.moveToFirst()) {
+                return packed;
+            }
+            packed.close();
+        }
+
         SQLiteDatabase database = application.acquireDatabase();
         if (database == null) {
             return null;
@@ -179,18 +314,12 @@ public class VersionProvider extends ContentProvider {
                 cursor = database.query(TABLE_CHAPTERS, COLUMNS_CHAPTER,
                         null, null, null, null, null, "1");
             }
-        } finally {
+        } catch (RuntimeException e) {
             application.releaseDatabase(database);
+            throw e;
         }
 
-        if (cursor == null) {
-            return null;
-        } else if (!cursor.moveToFirst()) {
-            cursor.close();
-            return null;
-        }
-
-        return cursor;
+        return lease(database, cursor);
     }
 
     private Cursor getChapters() {
@@ -203,18 +332,12 @@ public class VersionProvider extends ContentProvider {
         try {
             cursor = database.query(TABLE_CHAPTERS, COLUMNS_CHAPTERS,
                     null, null, null, null, null);
-        } finally {
+        } catch (RuntimeException e) {
             application.releaseDatabase(database);
+            throw e;
         }
 
-        if (cursor == null) {
-            return null;
-        } else if (!cursor.moveToFirst()) {
-            cursor.close();
-            return null;
-        }
-
-        return cursor;
+        return lease(database, cursor);
     }
 
     @Override
@@ -249,7 +372,10 @@ public class VersionProvider extends ContentProvider {
 
         switch (uriMatcher.match(uri)) {
             case URI_SEARCH:
-                return queryVerse(uri.getLastPathSegment(), uri.getQueryParameter("books"));
+                return queryVerse(uri.getLastPathSegment(), uri.getQueryParameter(QUERY_BOOKS),
+                        NumberUtils.parseLong(uri.getQueryParameter(QUERY_AFTER)),
+                        NumberUtils.parseInt(uri.getQueryParameter(QUERY_LIMIT)),
+                        Boolean.parseBoolean(uri.getQueryParameter(QUERY_COUNT)));
             case URI_VERSE:
                 String id = uri.getLastPathSegment();
                 return getVerse(id);
@@ -259,7 +385,7 @@ public class VersionProvider extends ContentProvider {
             case URI_CHAPTERS:
                 return getChapters();
             case URI_BOOK:
-                return queryBook(uri.getLastPathSegment(), uri.getQueryParameter("books"));
+                return queryBook(uri.getLastPathSegment(), uri.getQueryParameter(QUERY_BOOKS));
             default:
                 return null;
         }
@@ -10,10 +10,8 @@ import android.text.TextUtils;
 import java.io.File;
 import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Set;
-import java.util.regex.Pattern;
 
 import me.piebridge.bible.BibleApplication;
 import me.piebridge.bible.BuildConfig;
@@ -191,65 +189,24 @@ public class BibleUtils {
         }
     }
 
-    private static String fix(String content, boolean shangti) {
-        String fixed = content;
-        if (fixed.contains("\uD84C\uDFB4") && Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
-            fixed = fixed.replaceAll("\uD84C\uDFB4", "墩");
-        }
-        fixed = fixDouble(fixed, "pn");
-        fixed = fixDouble(fixed, "name");
-        fixed = fixDouble(fixed, "place");
-        fixed = fixDouble(fixed, "person");
-        if (shangti) {
-            return fixed.replaceAll("　神", "上帝")
-                    .replaceAll("　<span class=\"add\">神", "<span class=\"add\">上帝");
-        } else {
-            return fixed.replaceAll("上帝", "　神");
-        }
-    }
-
-    private static String fixDouble(String content, String clazz) {
-        Pattern pattern = null;
-        int index = content.indexOf("class=\"" + clazz);
-        if (index > 0 && content.indexOf("class=\"" + clazz + "2", index + 1) == -1) {
-            switch (clazz) {
-                case "pn":
-                    pattern = Holder.PN;
-                    break;
-                case "name":
-                    pattern = Holder.NAME;
-                    break;
-                case "place":
-                    pattern = Holder.PLACE;
-                    break;
-                case "person":
-                    pattern = Holder.PERSON;
-                default:
-                    break;
-            }
-        }
-        if (pattern != null) {
-            return pattern.matcher(content).replaceAll("$1" + clazz + "-" + clazz + " $2");
-        }
-        return content;
-    }
-
     public static String fix(BibleApplication application, String content) {
         boolean shangti = PreferenceManager.getDefaultSharedPreferences(application).getBoolean(SHANGTI, false);
-        String fixed = fix(content, shangti);
-        if (application.isZhCn(application.getVersion())) {
-            return fixed.replaceAll("「", "“").replaceAll("」", "”")
-                    .replaceAll("『", "‘").replaceAll("』", "’");
-        } else {
-            return fixed;
-        }
+        return fix(content, shangti, application.isZhCn(application.getVersion()));
+    }
+
+    public static String fix(String content, boolean shangti, boolean zhCn) {
+        return FixUtils.fix(content, shangti, zhCn, Build.VERSION.SDK_INT < Build.VERSION_CODES.M);
     }
 
     public static boolean putAll(Bundle oldBundle, Bundle newBundle) {
         Set<String> keys = newBundle.keySet();
         for (String key : keys) {
             if (CONTENT.equals(key)) {
-                // I don't think need to check content
+                // content is an id now, a new one is retrieved again, e.g. the old one is gone
+                if (!oldBundle.containsKey(CONTENT) || oldBundle.getLong(CONTENT) != newBundle.getLong(CONTENT)) {
+                    oldBundle.putAll(newBundle);
+                    return true;
+                }
                 continue;
             }
             Object oldValue = oldBundle.get(key);
@@ -277,21 +234,4 @@ public class BibleUtils {
         return ObjectUtils.equals(oldVersion, newVersion);
     }
 
-    private static boolean isSameContent(byte[] oldValue, byte[] newValue) {
-        byte[] oldContent = FileUtils.uncompress(oldValue);
-        byte[] newContent = FileUtils.uncompress(newValue);
-        return Arrays.equals(oldContent, newContent);
-    }
-
-    private static class Holder {
-        static final Pattern PN = Pattern.compile("(<span class=\"\\bpn\\b[^<>]*\">[^<>]*</span><span class=\")" +
-                "(\\bpn\\b[^<>]*\")");
-        static final Pattern NAME = Pattern.compile("(<span class=\"\\bname\\b[^<>]*\">[^<>]*</span><span class=\")" +
-                "(\\bname\\b[^<>]*\")");
-        static final Pattern PLACE = Pattern.compile("(<span class=\"\\bplace\\b[^<>]*\">[^<>]*</span><(?:u|span) class=\")" +
-                "(\\b(?:place|person)\\b[^<>]*\")");
-        static final Pattern PERSON = Pattern.compile("(<u class=\"\\bperson\\b[^<>]*\">[^<>]*</u><(?:u|span) class=\")" +
-                "(\\b(?:place|person)\\b[^<>]*\")");
-    }
-
 }
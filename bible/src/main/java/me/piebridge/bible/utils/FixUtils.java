@@ -0,0 +1,313 @@
+package me.piebridge.bible.utils;
+
+import java.util.Arrays;
+
+/**
+ * Single-pass rewriter for chapter content, same result as the former regex chain:
+ * <ul>
+ * <li>U+233B4 to 墩, for fonts without it</li>
+ * <li>adjacent pn, name, place, person: {@code class="pn"} of the latter to {@code class="pn-pn pn"}</li>
+ * <li>shangti: {@code 　神} to {@code 上帝}, or {@code 上帝} to {@code 　神}</li>
+ * <li>zh-CN: 「」『』 to “”‘’</li>
+ * </ul>
+ * A pair for doubling is {@code <span class="pn">text</span><span class="pn">}, the latter
+ * can't start another pair; doubling of a class is skipped if there is {@code class="pn2"}.
+ */
+public class FixUtils {
+
+    private static final String SPAN = "<span class=\"";
+
+    private static final String U = "<u class=\"";
+
+    private static final String CLASS = "class=\"";
+
+    private static final String CLOSE_SPAN = "</span>";
+
+    private static final String CLOSE_U = "</u>";
+
+    private static final String ADD = "<span class=\"add\">";
+
+    private static final String PN = "pn";
+
+    private static final String NAME = "name";
+
+    private static final String PLACE = "place";
+
+    private static final String PERSON = "person";
+
+    private static final int BIT_PN = 0x1;
+
+    private static final int BIT_NAME = 0x2;
+
+    private static final int BIT_PLACE = 0x4;
+
+    private static final int BIT_PERSON = 0x8;
+
+    // chapters are fixed on few threads, one buffer for each, a larger one isn't kept
+    private static final int MAX_BUFFER = 0x20000;
+
+    private static final ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<>();
+
+    private FixUtils() {
+
+    }
+
+    /**
+     * @param dun whether to replace U+233B4 with 墩
+     */
+    public static String fix(String content, boolean shangti, boolean zhCn, boolean dun) {
+        int length = content.length();
+        StringBuilder sb = obtainBuffer(length + 0x40);
+        int guards = (isDoubling(content, PN) ? BIT_PN : 0)
+                | (isDoubling(content, NAME) ? BIT_NAME : 0)
+                | (isDoubling(content, PLACE) ? BIT_PLACE : 0)
+                | (content.indexOf(CLASS + PERSON) > 0 ? BIT_PERSON : 0);
+
+        // person is doubled after place, and its check depends on doubled place
+        int[] persons = new int[0x10];
+        int personCount = 0;
+        int[] replaced = new int[0x10];
+        int replacedCount = 0;
+
+        // previous closed element, and the position next element should start
+        int previousFirsts = 0;
+        int previousEnd = -1;
+        // open element without children yet
+        int pendingFirsts = 0;
+        int pendingStart = -1;
+        String pendingClose = null;
+        // 神 after 　<span class="add">
+        int god = -1;
+
+        // content[mark, i) is unchanged and not appended yet
+        int mark = 0;
+        int i = 0;
+        while (i < length) {
+            char c = content.charAt(i);
+            if (c == '<' && guards != 0) {
+                if (pendingClose != null && content.startsWith(pendingClose, i)) {
+                    i += pendingClose.length();
+                    previousFirsts = pendingFirsts;
+                    previousEnd = i;
+                    pendingClose = null;
+                    continue;
+                }
+                int firsts = i == previousEnd ? previousFirsts : 0;
+                previousEnd = -1;
+                pendingClose = null;
+                boolean span = content.startsWith(SPAN, i);
+                if (span || content.startsWith(U, i)) {
+                    int start = i + (span ? SPAN.length() : U.length());
+                    int stop = findTagEnd(content, start);
+                    boolean closed = stop < length && content.charAt(stop) == '>' && content.charAt(stop - 1) == '"';
+                    int seconds = 0;
+                    int pending = 0;
+                    if (span) {
+                        if (isClass(content, start, stop, PN)) {
+                            seconds |= BIT_PN;
+                            pending |= closed ? BIT_PN : 0;
+                        } else if (isClass(content, start, stop, NAME)) {
+                            seconds |= BIT_NAME;
+                            pending |= closed ? BIT_NAME : 0;
+                        }
+                    }
+                    boolean person = isClass(content, start, stop, PERSON);
+                    boolean place = !person && isClass(content, start, stop, PLACE);
+                    if (place || person) {
+                        seconds |= BIT_PLACE | BIT_PERSON;
+                        if (span && place) {
+                            pending |= closed ? BIT_PLACE : 0;
+                        } else if (!span && person) {
+                            pending |= closed ? BIT_PERSON : 0;
+                        }
+                    }
+                    int doubled = firsts & seconds & guards;
+                    if (doubled != 0) {
+                        sb.append(content, mark, start);
+                        mark = start;
+                    }
+                    if ((doubled & BIT_PERSON) != 0) {
+                        persons = put(persons, personCount++, sb.length());
+                    }
+                    if ((doubled & BIT_PLACE) != 0) {
+                        sb.append("place-place ");
+                        if (person) {
+                            // class="person" is class="place-place person" now
+                            replaced = put(replaced, replacedCount++, start - CLASS.length());
+                            pending &= ~BIT_PERSON;
+                        }
+                    } else if ((doubled & BIT_PN) != 0) {
+                        sb.append("pn-pn ");
+                    } else if ((doubled & BIT_NAME) != 0) {
+                        sb.append("name-name ");
+                    }
+                    if (closed) {
+                        pendingFirsts = pending & ~doubled;
+                        pendingStart = stop + 1;
+                        pendingClose = span ? CLOSE_SPAN : CLOSE_U;
+                    }
+                    i = start;
+                    continue;
+                }
+            } else if (c == '>' && pendingClose != null && i >= pendingStart) {
+                pendingClose = null;
+            } else if (c >= '\u3000') {
+                String replacement = null;
+                int skip = 1;
+                char next = i + 1 < length ? content.charAt(i + 1) : 0;
+                if (dun && c == '\uD84C' && next == '\uDFB4') {
+                    replacement = "墩";
+                    skip = 2;
+                } else if (shangti && c == '　' && next == '神') {
+                    replacement = "上帝";
+                    skip = 2;
+                } else if (shangti && c == '　' && next == '<' && content.startsWith(ADD + "神", i + 1)) {
+                    replacement = "";
+                    god = i + 1 + ADD.length();
+                } else if (shangti && c == '神' && i == god) {
+                    replacement = "上帝";
+                } else if (!shangti && c == '上' && next == '帝') {
+                    replacement = "　神";
+                    skip = 2;
+                } else if (zhCn) {
+                    char zh = toZhCn(c);
+                    if (zh != c) {
+                        replacement = String.valueOf(zh);
+                    }
+                }
+                if (replacement != null) {
+                    sb.append(content, mark, i);
+                    sb.append(replacement);
+                    i += skip;
+                    mark = i;
+                    continue;
+                }
+            }
+            ++i;
+        }
+        if (mark == 0) {
+            recycleBuffer(sb);
+            return content;
+        }
+        sb.append(content, mark, length);
+
+        String fixed;
+        if (personCount > 0 && isDoubling(content, replaced, replacedCount)) {
+            fixed = insert(sb, persons, personCount, "person-person ");
+        } else {
+            fixed = sb.toString();
+        }
+        recycleBuffer(sb);
+        return fixed;
+    }
+
+    private static StringBuilder obtainBuffer(int capacity) {
+        StringBuilder sb = BUFFER.get();
+        if (sb == null) {
+            return new StringBuilder(capacity);
+        }
+        BUFFER.set(null);
+        sb.ensureCapacity(capacity);
+        return sb;
+    }
+
+    private static void recycleBuffer(StringBuilder sb) {
+        if (sb.capacity() <= MAX_BUFFER) {
+            sb.setLength(0);
+            BUFFER.set(sb);
+        }
+    }
+
+    private static char toZhCn(char c) {
+        switch (c) {
+            case '「':
+                return '“';
+            case '」':
+                return '”';
+            case '『':
+                return '‘';
+            case '』':
+                return '’';
+            default:
+                return c;
+        }
+    }
+
+    private static boolean isDoubling(String content, String clazz) {
+        int index = content.indexOf(CLASS + clazz);
+        return index > 0 && content.indexOf(CLASS + clazz + "2", index + 1) == -1;
+    }
+
+    /**
+     * as {@link #isDoubling(String, String)} for person, skip the ones replaced by place doubling
+     */
+    private static boolean isDoubling(String content, int[] replaced, int replacedCount) {
+        String key = CLASS + PERSON;
+        int index = content.indexOf(key);
+        int r = 0;
+        while (index >= 0) {
+            while (r < replacedCount && replaced[r] < index) {
+                ++r;
+            }
+            if (r < replacedCount && replaced[r] == index) {
+                index = content.indexOf(key, index + 1);
+            } else {
+                break;
+            }
+        }
+        return index > 0 && content.indexOf(key + "2", index + 1) == -1;
+    }
+
+    private static int findTagEnd(String content, int start) {
+        int length = content.length();
+        for (int i = start; i < length; ++i) {
+            char c = content.charAt(i);
+            if (c == '<' || c == '>') {
+                return i;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * class starts with the word, and there is a quote before the tag end
+     */
+    private static boolean isClass(String content, int start, int stop, String clazz) {
+        int end = start + clazz.length();
+        if (end > stop || !content.startsWith(clazz, start)) {
+            return false;
+        }
+        if (end < stop && isWord(content.charAt(end))) {
+            return false;
+        }
+        for (int i = end; i < stop; ++i) {
+            if (content.charAt(i) == '"') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isWord(char c) {
+        return c == '_' || Character.isLetterOrDigit(c);
+    }
+
+    private static int[] put(int[] values, int index, int value) {
+        int[] array = index < values.length ? values : Arrays.copyOf(values, values.length * 2);
+        array[index] = value;
+        return array;
+    }
+
+    private static String insert(StringBuilder sb, int[] offsets, int count, String s) {
+        StringBuilder result = new StringBuilder(sb.length() + count * s.length());
+        int last = 0;
+        for (int i = 0; i < count; ++i) {
+            result.append(sb, last, offsets[i]);
+            result.append(s);
+            last = offsets[i];
+        }
+        result.append(sb, last, sb.length());
+        return result.toString();
+    }
+
+}
@@ -19,6 +19,14 @@ public class NumberUtils {
         }
     }
 
+    public static long parseLong(String s) {
+        if (!TextUtils.isEmpty(s) && TextUtils.isDigitsOnly(s)) {
+            return Long.parseLong(s);
+        } else {
+            return 0;
+        }
+    }
+
     public static int parseInt(String s, int defaultValue) {
         if (!TextUtils.isEmpty(s) && TextUtils.isDigitsOnly(s)) {
             return Integer.parseInt(s);
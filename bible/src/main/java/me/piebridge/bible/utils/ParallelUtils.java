@@ -0,0 +1,90 @@
+package me.piebridge.bible.utils;
+
+import android.text.TextUtils;
+import android.util.SparseArray;
+
+import androidx.collection.ArraySet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Chapter of several versions side by side, one row per verse.
+ * <p>
+ * Cells are {@code span.text} with class {@code Book-chapter-verse}, and the first column has
+ * {@code sup.versenum}, so reader.full.js can select and highlight verses as a normal chapter.
+ */
+public class ParallelUtils {
+
+    private static final String STYLE = "<style>"
+            + "table.parallel{width:100%;border-collapse:collapse;table-layout:fixed}"
+            + "table.parallel th{text-align:left;font-weight:bold}"
+            + "table.parallel td,table.parallel th{vertical-align:top;padding:0.2em}"
+            + "</style>";
+
+    private ParallelUtils() {
+
+    }
+
+    /**
+     * @param osis   osis of the chapter, i.e. {@code Gen.1}
+     * @param names  name of each version
+     * @param verses verses of each version, verse number to text
+     */
+    public static String render(String osis, List<String> names, List<SparseArray<String>> verses) {
+        String prefix = osis.replace('.', '-');
+        StringBuilder sb = new StringBuilder(STYLE);
+        sb.append("<table class=\"parallel\"><tr>");
+        for (String name : names) {
+            sb.append("<th>");
+            sb.append(TextUtils.htmlEncode(name));
+            sb.append("</th>");
+        }
+        sb.append("</tr>");
+        for (int verse : getVerses(verses)) {
+            sb.append("<tr>");
+            for (int i = 0; i < verses.size(); ++i) {
+                String text = verses.get(i).get(verse);
+                sb.append("<td>");
+                if (text != null) {
+                    sb.append("<span class=\"text ");
+                    sb.append(prefix);
+                    sb.append('-');
+                    sb.append(verse);
+                    sb.append("\">");
+                    if (i == 0) {
+                        sb.append("<sup class=\"versenum\">");
+                        sb.append(verse);
+                        sb.append(" </sup>");
+                    }
+                    sb.append(TextUtils.htmlEncode(text));
+                    sb.append("</span>");
+                }
+                sb.append("</td>");
+            }
+            sb.append("</tr>");
+        }
+        sb.append("</table>");
+        return sb.toString();
+    }
+
+    /**
+     * @return verse numbers in any version, ascending
+     */
+    private static List<Integer> getVerses(List<SparseArray<String>> verses) {
+        Set<Integer> numbers = new ArraySet<>();
+        for (SparseArray<String> array : verses) {
+            for (int i = 0; i < array.size(); ++i) {
+                if (array.keyAt(i) > 0) {
+                    numbers.add(array.keyAt(i));
+                }
+            }
+        }
+        List<Integer> sorted = new ArrayList<>(numbers);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+}
@@ -0,0 +1,112 @@
+package me.piebridge.bible.utils;
+
+import java.util.Arrays;
+
+/**
+ * Verses of a chapter as bits, bit {@code n} of the blob is verse {@code n}.
+ * <p>
+ * The text form is as {@code getVerses} in reader.full.js, i.e. {@code 1-3,5}.
+ */
+public class VersesUtils {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private VersesUtils() {
+
+    }
+
+    /**
+     * @param verses verses, i.e. {@code 1-3,5}, invalid parts are ignored
+     */
+    public static byte[] toBits(String verses) {
+        if (verses == null || verses.isEmpty()) {
+            return EMPTY;
+        }
+        byte[] bits = EMPTY;
+        int length = verses.length();
+        int start = 0;
+        while (start < length) {
+            int end = verses.indexOf(',', start);
+            if (end < 0) {
+                end = length;
+            }
+            int hyphen = verses.indexOf('-', start);
+            int first;
+            int last;
+            if (hyphen > start && hyphen < end) {
+                first = parseVerse(verses, start, hyphen);
+                last = parseVerse(verses, hyphen + 1, end);
+            } else {
+                first = parseVerse(verses, start, end);
+                last = first;
+            }
+            if (first > 0 && last >= first) {
+                bits = ensure(bits, last);
+                for (int verse = first; verse <= last; ++verse) {
+                    bits[verse >>> 3] |= 1 << (verse & 0x7);
+                }
+            }
+            start = end + 1;
+        }
+        return trim(bits);
+    }
+
+    public static String toVerses(byte[] bits) {
+        if (bits == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        int count = bits.length << 3;
+        int verse = 1;
+        while (verse < count) {
+            if (!contains(bits, verse)) {
+                ++verse;
+                continue;
+            }
+            int last = verse;
+            while (last + 1 < count && contains(bits, last + 1)) {
+                ++last;
+            }
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(verse);
+            if (last > verse) {
+                sb.append('-');
+                sb.append(last);
+            }
+            verse = last + 1;
+        }
+        return sb.toString();
+    }
+
+    public static boolean contains(byte[] bits, int verse) {
+        return verse >= 0 && (verse >>> 3) < bits.length && (bits[verse >>> 3] & (1 << (verse & 0x7))) != 0;
+    }
+
+    private static int parseVerse(String verses, int start, int end) {
+        int verse = 0;
+        for (int i = start; i < end; ++i) {
+            char c = verses.charAt(i);
+            if (c < '0' || c > '9' || verse > 0xfff) {
+                return 0;
+            }
+            verse = verse * 10 + (c - '0');
+        }
+        return verse;
+    }
+
+    private static byte[] ensure(byte[] bits, int verse) {
+        int size = (verse >>> 3) + 1;
+        return bits.length >= size ? bits : Arrays.copyOf(bits, size);
+    }
+
+    private static byte[] trim(byte[] bits) {
+        int size = bits.length;
+        while (size > 0 && bits[size - 1] == 0) {
+            --size;
+        }
+        return size == bits.length ? bits : Arrays.copyOf(bits, size);
+    }
+
+}